@@ -0,0 +1,33 @@
+-- Procedure ADMIN.CHANGE_CYCLE_PHASE records the phase of an unattended switch cycle, so that a cycle interrupted by a crash
+-- can be resumed. Phase values: S (session switch), A (attribute switch), C (completing). A started switch takes precedence;
+-- the phase records the step to take once no switch is started.
+-- When a cycle begins (phase changes from NULL) the move pacing values are saved, and when it ends (phase changes to NULL)
+-- they are restored, so that pacing adjustments made during the cycle do not outlive it.
+ALTER MODULE admin
+ADD PROCEDURE change_cycle_phase(p_cycle_phase CHAR(1))
+  AUTONOMOUS
+BEGIN ATOMIC
+  IF p_cycle_phase IS NULL THEN
+    -- End the cycle, restoring saved pacing values.
+    UPDATE sesctl
+    SET
+      session_move_commit_limit = COALESCE(saved_session_move_commit_limit, session_move_commit_limit),
+      session_move_sleep_seconds = COALESCE(saved_session_move_sleep_seconds, session_move_sleep_seconds),
+      attribute_move_commit_limit = COALESCE(saved_attribute_move_commit_limit, attribute_move_commit_limit),
+      attribute_move_sleep_seconds = COALESCE(saved_attribute_move_sleep_seconds, attribute_move_sleep_seconds),
+      cycle_phase = NULL,
+      saved_session_move_commit_limit = NULL,
+      saved_session_move_sleep_seconds = NULL,
+      saved_attribute_move_commit_limit = NULL,
+      saved_attribute_move_sleep_seconds = NULL;
+  ELSE
+    -- Begin or advance the cycle. Pacing values are saved only if not already saved.
+    UPDATE sesctl
+    SET
+      cycle_phase = p_cycle_phase,
+      saved_session_move_commit_limit = COALESCE(saved_session_move_commit_limit, session_move_commit_limit),
+      saved_session_move_sleep_seconds = COALESCE(saved_session_move_sleep_seconds, session_move_sleep_seconds),
+      saved_attribute_move_commit_limit = COALESCE(saved_attribute_move_commit_limit, attribute_move_commit_limit),
+      saved_attribute_move_sleep_seconds = COALESCE(saved_attribute_move_sleep_seconds, attribute_move_sleep_seconds);
+  END IF;
+END@
@@ -0,0 +1,20 @@
+-- Procedure ADMIN.CHANGE_MOVE_PACING changes the commit limit and sleep interval used by a running (or future) move.
+-- A running move picks up the new values at its next commit.
+ALTER MODULE admin
+ADD PROCEDURE change_move_pacing
+(
+  p_session_move_commit_limit SMALLINT,
+  p_session_move_sleep_seconds SMALLINT,
+  p_attribute_move_commit_limit SMALLINT,
+  p_attribute_move_sleep_seconds SMALLINT
+)
+  AUTONOMOUS
+BEGIN ATOMIC
+  -- Update the control table. NULL input leaves the corresponding value unchanged.
+  UPDATE sesctl
+  SET
+    session_move_commit_limit = COALESCE(p_session_move_commit_limit, session_move_commit_limit),
+    session_move_sleep_seconds = COALESCE(p_session_move_sleep_seconds, session_move_sleep_seconds),
+    attribute_move_commit_limit = COALESCE(p_attribute_move_commit_limit, attribute_move_commit_limit),
+    attribute_move_sleep_seconds = COALESCE(p_attribute_move_sleep_seconds, attribute_move_sleep_seconds);
+END@
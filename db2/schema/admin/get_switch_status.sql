@@ -0,0 +1,27 @@
+-- Procedure ADMIN.GET_SWITCH_STATUS retrieves partition switch status and move pacing values.
+ALTER MODULE admin
+ADD PROCEDURE get_switch_status(OUT p_switch_status switch_status)
+  AUTONOMOUS
+BEGIN
+  SET p_switch_status =
+    (
+      SELECT
+        is_switching,
+        switch_start_ts,
+        attribute_is_switching,
+        attribute_switch_start_ts,
+        session_move_commit_limit,
+        session_move_sleep_seconds,
+        attribute_move_commit_limit,
+        attribute_move_sleep_seconds,
+        is_move_stop_requested,
+        cycle_phase,
+        saved_session_move_commit_limit,
+        saved_session_move_sleep_seconds,
+        saved_attribute_move_commit_limit,
+        saved_attribute_move_sleep_seconds
+      FROM
+        sesctl
+      WITH CS
+    );
+END@
@@ -0,0 +1,8 @@
+-- Procedure ADMIN.REQUEST_MOVE_STOP requests that a running move stops at its next commit. The switch remains started,
+-- so the move can be resumed later by calling MOVE_SESSIONS or MOVE_ATTRIBUTES again.
+ALTER MODULE admin
+ADD PROCEDURE request_move_stop()
+  AUTONOMOUS
+BEGIN ATOMIC
+  UPDATE sesctl SET is_move_stop_requested = TRUE;
+END@
@@ -0,0 +1,41 @@
+-- Function ADMIN.UNMOVED_ATTRIBUTES_COUNT returns the count of attributes that have not been moved to the new partition.
+ALTER MODULE admin
+ADD FUNCTION unmoved_attributes_count() RETURNS BIGINT
+BEGIN
+  DECLARE v_session_partition_id CHAR(1);
+  DECLARE v_attribute_partition_id CHAR(1);
+  DECLARE v_attribute_is_switching BOOLEAN;
+
+  -- Retrieve session and attribute partition control information.
+  SET (v_session_partition_id, v_attribute_partition_id, v_attribute_is_switching) =
+    (
+      SELECT
+        active_partition_id, attribute_active_partition_id, attribute_is_switching
+      FROM
+        sesctl
+      WITH CS
+    );
+
+  -- No attributes remain to be moved if a switch is not started.
+  IF NOT v_attribute_is_switching THEN
+    RETURN 0;
+  END IF;
+
+  -- Count all rows in the old active partition (ignoring attributes for logically deleted sessions).
+  RETURN
+    (
+      SELECT
+        COUNT_BIG(*)
+      FROM
+        sesatt AS a
+          INNER JOIN
+        sessio AS s
+          ON
+            s.session_internal_id = a.session_internal_id AND
+            s.partition_id = v_session_partition_id AND
+            s.deleted_ts IS NULL
+      WHERE
+        a.partition_id = v_attribute_partition_id
+      WITH UR
+    );
+END@
@@ -0,0 +1,22 @@
+-- Function ADMIN.UNMOVED_SESSIONS_COUNT returns the count of sessions that have not been moved to the new partition.
+ALTER MODULE admin
+ADD FUNCTION unmoved_sessions_count() RETURNS BIGINT
+BEGIN
+  DECLARE v_partition_id CHAR(1);
+  DECLARE v_is_switching BOOLEAN;
+
+  -- Retrieve session partition control information.
+  SET (v_partition_id, v_is_switching) =
+    (SELECT active_partition_id, is_switching FROM sesctl WITH CS);
+
+  -- No sessions remain to be moved if a switch is not started.
+  IF NOT v_is_switching THEN
+    RETURN 0;
+  END IF;
+
+  -- Count all rows in the old active partition (ignoring logically deleted sessions).
+  RETURN
+    (
+      SELECT COUNT_BIG(*) FROM sessio WHERE partition_id = v_partition_id AND deleted_ts IS NULL WITH UR
+    );
+END@
@@ -1,4 +1,6 @@
 -- Procedure ATTRIBUTES.GET_ATTRIBUTES retrieves session attributes for the specified session identifier (P_SESSION_ID).
+-- When P_SINCE_GENERATION_ID is NULL, all attribute names are returned without objects (names-only mode, used to detect
+-- deletions); otherwise attributes with a later generation are returned with their objects.
 ALTER MODULE attributes
 ADD PROCEDURE get_attributes
 (
@@ -73,14 +75,14 @@ BEGIN
   -- Iterate through session attributes in the active partition to populate array.
   FOR r AS
     SELECT 
-      attribute_name, object
+      attribute_name, CASE WHEN p_since_generation_id IS NULL THEN NULL ELSE object END AS object
     FROM
       sesatt
     WHERE
       session_internal_id = v_session_internal_id AND
       attribute_partition_num = v_attribute_partition_num AND
       partition_id = v_attribute_partition_id AND
-      generation_id > p_since_generation_id AND
+      (p_since_generation_id IS NULL OR generation_id > p_since_generation_id) AND
       v_session_deleted_ts IS NULL
     WITH CS
   DO
@@ -95,14 +97,14 @@ BEGIN
   IF v_attribute_is_switching THEN
     FOR r AS
       SELECT 
-        attribute_name, object
+        attribute_name, CASE WHEN p_since_generation_id IS NULL THEN NULL ELSE object END AS object
       FROM
         sesatt
       WHERE
         session_internal_id = v_session_internal_id AND
         attribute_partition_num = v_attribute_partition_num AND
         partition_id != v_attribute_partition_id AND
-        generation_id > p_since_generation_id AND
+        (p_since_generation_id IS NULL OR generation_id > p_since_generation_id) AND
         v_session_deleted_ts IS NULL
       WITH CS
     DO
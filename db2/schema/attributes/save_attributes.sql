@@ -3,7 +3,8 @@ ALTER MODULE attributes
 ADD PROCEDURE save_attributes
 (
   p_session_id VARCHAR(60),
-  p_session_attributes session_attribute_array
+  p_session_attributes session_attribute_array,
+  p_min_generation_id INTEGER DEFAULT NULL
 )
   AUTONOMOUS
 BEGIN
@@ -14,7 +15,8 @@ BEGIN
   DECLARE v_attribute_is_switching BOOLEAN;
   DECLARE v_session_internal_id BIGINT;
   DECLARE v_attribute_partition_num SMALLINT;
-  DECLARE v_attribute_generation_id SMALLINT;
+  DECLARE v_attribute_generation_id INTEGER;
+  DECLARE v_new_generation_id INTEGER;
   DECLARE v_is_matched_object BOOLEAN;
   DECLARE v_is_changed BOOLEAN DEFAULT FALSE;
 
@@ -71,6 +73,10 @@ BEGIN
     SIGNAL SQLSTATE '72002' SET MESSAGE_TEXT = 'Session does not exist';
   END IF;
 
+  -- Changes get the next generation, or the minimum generation if that is higher (e.g. for a session copied from another
+  -- repository, so that caches holding the source generation reload the copied attributes).
+  SET v_new_generation_id = MAX(v_attribute_generation_id + 1, COALESCE(p_min_generation_id, 0));
+
  -- Update session attributes.
   FOR r AS
     SELECT 
@@ -149,7 +155,7 @@ BEGIN
             r.attribute_name,
             v_attribute_partition_num,
             common.new_partition_id(v_attribute_is_switching, v_attribute_partition_id),
-            v_attribute_generation_id + 1,
+            v_new_generation_id,
             r.object
           );
         SET v_is_changed = TRUE;
@@ -159,7 +165,7 @@ BEGIN
           UPDATE sesatt
           SET
             partition_id = common.new_partition_id(TRUE, v_attribute_partition_id),
-            generation_id = v_attribute_generation_id + 1,
+            generation_id = v_new_generation_id,
             object = r.object
           WHERE
             session_internal_id = v_session_internal_id AND 
@@ -168,7 +174,7 @@ BEGIN
         ELSE
           UPDATE sesatt
           SET
-            generation_id = v_attribute_generation_id + 1,
+            generation_id = v_new_generation_id,
             object = r.object
           WHERE
             session_internal_id = v_session_internal_id AND 
@@ -181,18 +187,18 @@ BEGIN
     END IF;
   END FOR;
 
-  -- If any attribute changes have been made then update session.
-  IF v_is_changed THEN
+  -- If any attribute changes have been made, or the minimum generation is ahead, then update session.
+  IF v_is_changed OR COALESCE(p_min_generation_id, 0) > v_attribute_generation_id THEN
     IF v_is_switching THEN 
       UPDATE sessio
       SET
-        attribute_generation_id = v_attribute_generation_id + 1
+        attribute_generation_id = v_new_generation_id
       WHERE
         session_id = p_session_id;
     ELSE
       UPDATE sessio
       SET
-        attribute_generation_id = v_attribute_generation_id + 1
+        attribute_generation_id = v_new_generation_id
       WHERE
         session_id = p_session_id AND partition_id = v_partition_id;
     END IF;    
@@ -1,6 +1,25 @@
 -- Module ADMIN contains housekeeping routines.
 CREATE OR REPLACE MODULE admin;
 
+ALTER MODULE admin
+PUBLISH TYPE switch_status AS ROW
+(
+  is_switching BOOLEAN,
+  switch_start_ts TIMESTAMP(0),
+  attribute_is_switching BOOLEAN,
+  attribute_switch_start_ts TIMESTAMP(0),
+  session_move_commit_limit SMALLINT,
+  session_move_sleep_seconds SMALLINT,
+  attribute_move_commit_limit SMALLINT,
+  attribute_move_sleep_seconds SMALLINT,
+  is_move_stop_requested BOOLEAN,
+  cycle_phase CHAR(1),
+  saved_session_move_commit_limit SMALLINT,
+  saved_session_move_sleep_seconds SMALLINT,
+  saved_attribute_move_commit_limit SMALLINT,
+  saved_attribute_move_sleep_seconds SMALLINT
+);
+
 -- Initiate session partition switching.
 ALTER MODULE admin
 PUBLISH PROCEDURE start_session_switch();
@@ -32,3 +51,25 @@ PUBLISH FUNCTION unmoved_attributes_count() RETURNS BIGINT;
 -- Finalise attribute partition switching.
 ALTER MODULE admin
 PUBLISH PROCEDURE end_attribute_switch();
+
+-- Retrieve partition switch status and move pacing values.
+ALTER MODULE admin
+PUBLISH PROCEDURE get_switch_status(OUT p_switch_status switch_status);
+
+-- Change move pacing values.
+ALTER MODULE admin
+PUBLISH PROCEDURE change_move_pacing
+(
+  p_session_move_commit_limit SMALLINT,
+  p_session_move_sleep_seconds SMALLINT,
+  p_attribute_move_commit_limit SMALLINT,
+  p_attribute_move_sleep_seconds SMALLINT
+);
+
+-- Request that a running move stops at its next commit.
+ALTER MODULE admin
+PUBLISH PROCEDURE request_move_stop();
+
+-- Record the phase of an unattended switch cycle, saving and restoring move pacing values.
+ALTER MODULE admin
+PUBLISH PROCEDURE change_cycle_phase(p_cycle_phase CHAR(1));
@@ -11,18 +11,20 @@ PUBLISH TYPE session_attribute AS ROW
 ALTER MODULE attributes
 PUBLISH TYPE session_attribute_array AS session_attribute ARRAY[];
 
--- Save session attributes.
+-- Save session attributes. Changed attributes, and the session, get the next attribute generation, or P_MIN_GENERATION_ID
+-- if that is higher; when it is, the session generation is raised to it even if no attribute has changed.
 ALTER MODULE attributes
 PUBLISH PROCEDURE save_attributes
 (
   p_session_id VARCHAR(60),
-  p_session_attributes session_attribute_array
+  p_session_attributes session_attribute_array,
+  p_min_generation_id INTEGER DEFAULT NULL
 );
 
 -- Retrieve session attributes for the specified session identifier (P_SESSION_ID). The specified P_SINCE_GENERATION_ID value
 -- determines which attributes are returned. When 0, all attribute objects are returned (i.e. full load); when greater than 0,
 -- only attributes with a generation later than P_SINCE_GENERATION_ID are returned (i.e. delta load). Deleted attributes are
--- returned with a NULL object.
+-- not returned, so when NULL, all attribute names are returned with a NULL object (i.e. names only), for detecting deletions.
 ALTER MODULE attributes
 PUBLISH PROCEDURE get_attributes
 (
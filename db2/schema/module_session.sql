@@ -24,3 +24,22 @@ PUBLISH PROCEDURE get_session
   p_session_id VARCHAR(60),
   OUT p_session_info session_info
 );
+
+-- Retrieve session information without accessing the session
+ALTER MODULE session
+PUBLISH PROCEDURE peek_session
+(
+  p_session_id VARCHAR(60),
+  OUT p_session_info session_info
+);
+
+ALTER MODULE session
+PUBLISH TYPE session_id_array AS VARCHAR(60) ARRAY[];
+
+-- Retrieve identifiers of sessions for an authorisation name
+ALTER MODULE session
+PUBLISH PROCEDURE get_session_ids
+(
+  p_auth_name VARCHAR(60),
+  OUT p_session_ids session_id_array
+);
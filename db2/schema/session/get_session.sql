@@ -12,6 +12,7 @@ BEGIN
   DECLARE v_is_switching BOOLEAN;
   DECLARE v_max_idle_minutes SMALLINT;
   DECLARE v_max_authentication_minutes SMALLINT;
+  DECLARE v_expiry_ts TIMESTAMP(0);
 
   -- Retrieve UTC timestamp and session partition control information.
   SET (v_utc, v_partition_id, v_is_switching, v_max_idle_minutes, v_max_authentication_minutes) =
@@ -36,7 +37,7 @@ BEGIN
         auth_name,
         properties_json,
         CASE WHEN auth_name IS NULL THEN FALSE ELSE TRUE END AS is_authenticated,
-        CASE WHEN expiry_ts < v_utc THEN FALSE ELSE TRUE END AS is_expired,
+        CASE WHEN expiry_ts < v_utc THEN TRUE ELSE FALSE END AS is_expired,
         attribute_generation_id
       FROM 
         sessio
@@ -62,7 +63,7 @@ BEGIN
             auth_name,
             properties_json,
             CASE WHEN auth_name IS NULL THEN FALSE ELSE TRUE END AS is_authenticated,
-            CASE WHEN expiry_ts < v_utc THEN FALSE ELSE TRUE END AS is_expired,
+            CASE WHEN expiry_ts < v_utc THEN TRUE ELSE FALSE END AS is_expired,
             attribute_generation_id
           FROM 
             sessio
@@ -85,18 +86,21 @@ BEGIN
     RETURN;
   END IF;
 
-  -- If the session is not expired then update the last accessed time.
-  IF p_session_info.expiry_ts < v_utc  THEN
+  -- If the session is not expired then update the last accessed time, and move the expiry time forward to match.
+  IF p_session_info.expiry_ts >= v_utc THEN
+    SET v_expiry_ts = common.expiry_ts(p_session_info.max_idle_minutes, v_utc, p_session_info.last_authenticated_ts);
     IF v_is_switching THEN
       UPDATE sessio
       SET
-        last_accessed_ts = v_utc
+        last_accessed_ts = v_utc,
+        expiry_ts = v_expiry_ts
       WHERE
         session_id = p_session_id;
     ELSE
       UPDATE sessio
       SET
-        last_accessed_ts = v_utc
+        last_accessed_ts = v_utc,
+        expiry_ts = v_expiry_ts
       WHERE
         session_id = p_session_id AND partition_id = v_partition_id;
     END IF;
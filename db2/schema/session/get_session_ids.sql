@@ -0,0 +1,32 @@
+-- Procedure SESSION.GET_SESSION_IDS retrieves the identifiers of sessions authenticated with the specified authorisation name.
+ALTER MODULE session
+ADD PROCEDURE get_session_ids
+(
+  p_auth_name VARCHAR(60),
+  OUT p_session_ids session_id_array
+)
+  AUTONOMOUS
+BEGIN
+  DECLARE v_index INTEGER DEFAULT 1;
+
+  -- Exit with error if inputs are unexpectedly null.
+  IF p_auth_name IS NULL THEN
+    SIGNAL SQLSTATE '72003' SET MESSAGE_TEXT = 'Unsupported NULL input';
+  END IF;
+
+  -- Iterate through sessions (except deleted ones) in both partitions to populate array. No locks are held, so the result
+  -- is a snapshot that may be stale by the time it is used.
+  FOR r AS
+    SELECT 
+      session_id
+    FROM
+      sessio
+    WHERE
+      auth_name = p_auth_name AND
+      deleted_ts IS NULL
+    WITH CS
+  DO
+    SET p_session_ids[v_index] = r.session_id;
+    SET v_index = v_index + 1;
+  END FOR;
+END@
@@ -0,0 +1,73 @@
+-- Procedure SESSION.PEEK_SESSION retrieves session details without accessing the session: unlike GET_SESSION, the last
+-- accessed and expiry times are left unchanged, no locks are held and the session is not moved between partitions. Used
+-- for listings, which must not keep sessions alive.
+ALTER MODULE session
+ADD PROCEDURE peek_session
+(
+  p_session_id VARCHAR(60),
+  OUT p_session_info session_info
+)
+  AUTONOMOUS
+BEGIN
+  DECLARE v_utc TIMESTAMP(0);
+  DECLARE v_partition_id CHAR(1);
+  DECLARE v_is_switching BOOLEAN;
+  DECLARE v_max_idle_minutes SMALLINT;
+  DECLARE v_max_authentication_minutes SMALLINT;
+
+  -- Retrieve UTC timestamp and session partition control information.
+  SET (v_utc, v_partition_id, v_is_switching, v_max_idle_minutes, v_max_authentication_minutes) =
+    (
+      SELECT 
+        CURRENT_TIMESTAMP - CURRENT_TIMEZONE, active_partition_id, is_switching, max_idle_minutes, max_authentication_minutes
+      FROM
+        sesctl
+      WITH CS
+    );
+
+  -- Look up session in the active partition.
+  SET p_session_info =
+    (
+      SELECT 
+        created_ts,
+        last_accessed_ts,
+        last_authenticated_ts,
+        COALESCE(max_idle_minutes, v_max_idle_minutes),
+        v_max_authentication_minutes,
+        expiry_ts,
+        auth_name,
+        properties_json,
+        CASE WHEN auth_name IS NULL THEN FALSE ELSE TRUE END AS is_authenticated,
+        CASE WHEN expiry_ts < v_utc THEN TRUE ELSE FALSE END AS is_expired,
+        attribute_generation_id
+      FROM 
+        sessio
+      WHERE
+        session_id = p_session_id AND partition_id = v_partition_id AND deleted_ts IS NULL
+      WITH CS
+    );
+
+  -- If partitions are switching and the session was not found in the active partition then look it up in the other one.
+  IF v_is_switching AND p_session_info.created_ts IS NULL THEN
+    SET p_session_info =
+      (
+        SELECT 
+          created_ts,
+          last_accessed_ts,
+          last_authenticated_ts,
+          COALESCE(max_idle_minutes, v_max_idle_minutes),
+          v_max_authentication_minutes,
+          expiry_ts,
+          auth_name,
+          properties_json,
+          CASE WHEN auth_name IS NULL THEN FALSE ELSE TRUE END AS is_authenticated,
+          CASE WHEN expiry_ts < v_utc THEN TRUE ELSE FALSE END AS is_expired,
+          attribute_generation_id
+        FROM 
+          sessio
+        WHERE
+          session_id = p_session_id AND partition_id != v_partition_id AND deleted_ts IS NULL
+        WITH CS
+      );
+  END IF;
+END@
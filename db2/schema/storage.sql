@@ -43,7 +43,12 @@ CREATE TABLE sesctl
   session_move_sleep_seconds SMALLINT NOT NULL DEFAULT 1,
   attribute_move_commit_limit SMALLINT NOT NULL DEFAULT 10,
   attribute_move_sleep_seconds SMALLINT NOT NULL DEFAULT 1,
-  is_move_stop_requested BOOLEAN NOT NULL DEFAULT FALSE
+  is_move_stop_requested BOOLEAN NOT NULL DEFAULT FALSE,
+  cycle_phase CHAR(1),
+  saved_session_move_commit_limit SMALLINT,
+  saved_session_move_sleep_seconds SMALLINT,
+  saved_attribute_move_commit_limit SMALLINT,
+  saved_attribute_move_sleep_seconds SMALLINT
 )
   ORGANIZE BY ROW
   IN ts_sessio_dat INDEX IN ts_sessio_idx;
@@ -99,6 +104,9 @@ ADD CONSTRAINT sesctl_cc13 CHECK (attribute_move_commit_limit > 0);
 ALTER TABLE sesctl
 ADD CONSTRAINT sesctl_cc14 CHECK (attribute_move_sleep_seconds >= 0);
 
+ALTER TABLE sesctl
+ADD CONSTRAINT sesctl_cc15 CHECK (cycle_phase IN ('S', 'A', 'C'));
+
 INSERT INTO sesctl(singleton_id) VALUES 1;
 
 -- Session table A
@@ -0,0 +1,12 @@
+-- Upgrade: add switch cycle state to an existing session control table (SESCTL).
+-- New installations get these columns from storage.sql, so only run this against a schema created before they existed.
+-- All columns are nullable, so no REORG is needed.
+ALTER TABLE sesctl
+  ADD COLUMN cycle_phase CHAR(1)
+  ADD COLUMN saved_session_move_commit_limit SMALLINT
+  ADD COLUMN saved_session_move_sleep_seconds SMALLINT
+  ADD COLUMN saved_attribute_move_commit_limit SMALLINT
+  ADD COLUMN saved_attribute_move_sleep_seconds SMALLINT;
+
+ALTER TABLE sesctl
+ADD CONSTRAINT sesctl_cc15 CHECK (cycle_phase IN ('S', 'A', 'C'));
@@ -0,0 +1,217 @@
+package com.easydataservices.open.auth.spring;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import org.springframework.session.Session;
+
+/**
+ * Spring Session {@link Session} backed by an AUTH Service repository. Tracks changed and removed attributes, so that only
+ * the delta is sent when the session is saved. Attribute values must be {@link java.io.Serializable}; a mutated attribute
+ * value is only saved if it is set again.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+public final class AuthSession implements Session {
+  private final AuthSessionRepository repository;
+  private String id;
+  private String originalId;
+  private boolean isNew;
+  private Instant creationTime;
+  private Instant lastAccessedTime;
+  private Duration maxInactiveInterval;
+  private boolean isMaxInactiveIntervalChanged;
+  private boolean isExpiredInStore;
+  private String authName;
+  private int attributeGenerationId;
+  private Map<String, Object> attributes;
+  private Set<String> changedAttributeNames = new LinkedHashSet<String>();
+
+  /**
+   * Constructor for a new session, not yet saved.
+   * @param repository Owning repository.
+   * @param maxInactiveInterval Initial maximum inactive interval.
+   * @param isMaxInactiveIntervalChanged {@code true} if the interval should be saved with the session; {@code false} if the
+   * store default applies.
+   */
+  AuthSession(AuthSessionRepository repository, Duration maxInactiveInterval, boolean isMaxInactiveIntervalChanged) {
+    this.repository = repository;
+    this.id = generateId();
+    this.originalId = id;
+    this.isNew = true;
+    this.creationTime = Instant.now();
+    this.lastAccessedTime = creationTime;
+    this.maxInactiveInterval = maxInactiveInterval;
+    this.isMaxInactiveIntervalChanged = isMaxInactiveIntervalChanged;
+    this.attributes = new HashMap<String, Object>();
+  }
+
+  /**
+   * Constructor for a session loaded from the store.
+   * @param repository Owning repository.
+   * @param id Session identifier.
+   * @param creationTime Created time.
+   * @param lastAccessedTime Last accessed time.
+   * @param maxInactiveInterval Maximum inactive interval.
+   * @param isExpiredInStore {@code true} if the store reports the session expired.
+   * @param authName Stored authorisation name; {@code null} if not authenticated.
+   * @param attributeGenerationId Attribute generation of the loaded attributes.
+   * @param attributes Loaded attributes. The map is copied.
+   */
+  AuthSession(AuthSessionRepository repository, String id, Instant creationTime, Instant lastAccessedTime,
+    Duration maxInactiveInterval, boolean isExpiredInStore, String authName, int attributeGenerationId,
+    Map<String, Object> attributes) {
+    this.repository = repository;
+    this.id = id;
+    this.originalId = id;
+    this.isNew = false;
+    this.creationTime = creationTime;
+    this.lastAccessedTime = lastAccessedTime;
+    this.maxInactiveInterval = maxInactiveInterval;
+    this.isExpiredInStore = isExpiredInStore;
+    this.authName = authName;
+    this.attributeGenerationId = attributeGenerationId;
+    this.attributes = new HashMap<String, Object>(attributes);
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  @Override
+  public String changeSessionId() {
+    id = generateId();
+    repository.flushImmediateIfNecessary(this);
+    return id;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T getAttribute(String attributeName) {
+    return (T) attributes.get(attributeName);
+  }
+
+  @Override
+  public Set<String> getAttributeNames() {
+    return new LinkedHashSet<String>(attributes.keySet());
+  }
+
+  @Override
+  public void setAttribute(String attributeName, Object attributeValue) {
+    if (attributeValue == null) {
+      removeAttribute(attributeName);
+      return;
+    }
+    attributes.put(attributeName, attributeValue);
+    changedAttributeNames.add(attributeName);
+    repository.flushImmediateIfNecessary(this);
+  }
+
+  @Override
+  public void removeAttribute(String attributeName) {
+    // Removal of an unknown attribute is still sent, in case another node has added it since this copy was loaded.
+    attributes.remove(attributeName);
+    changedAttributeNames.add(attributeName);
+    repository.flushImmediateIfNecessary(this);
+  }
+
+  @Override
+  public Instant getCreationTime() {
+    return creationTime;
+  }
+
+  @Override
+  public void setLastAccessedTime(Instant lastAccessedTime) {
+    // The store updates its own last accessed time whenever the session is retrieved.
+    this.lastAccessedTime = lastAccessedTime;
+  }
+
+  @Override
+  public Instant getLastAccessedTime() {
+    return lastAccessedTime;
+  }
+
+  @Override
+  public void setMaxInactiveInterval(Duration interval) {
+    this.maxInactiveInterval = interval;
+    this.isMaxInactiveIntervalChanged = true;
+    repository.flushImmediateIfNecessary(this);
+  }
+
+  @Override
+  public Duration getMaxInactiveInterval() {
+    return maxInactiveInterval;
+  }
+
+  @Override
+  public boolean isExpired() {
+    if (isExpiredInStore) {
+      return true;
+    }
+    if (maxInactiveInterval == null || maxInactiveInterval.isNegative()) {
+      return false;
+    }
+    return Instant.now().isAfter(lastAccessedTime.plus(maxInactiveInterval));
+  }
+
+  /**
+   * Return the session identifier under which the session is currently stored.
+   * @return Stored session identifier.
+   */
+  String getOriginalId() {
+    return originalId;
+  }
+
+  boolean isNew() {
+    return isNew;
+  }
+
+  boolean isMaxInactiveIntervalChanged() {
+    return isMaxInactiveIntervalChanged;
+  }
+
+  String getAuthName() {
+    return authName;
+  }
+
+  int getAttributeGenerationId() {
+    return attributeGenerationId;
+  }
+
+  /**
+   * Return the names of attributes changed or removed since the session was loaded or last saved.
+   * @return Changed attribute names.
+   */
+  Set<String> getChangedAttributeNames() {
+    return changedAttributeNames;
+  }
+
+  /**
+   * Return a copy of the current attributes.
+   * @return Attribute map.
+   */
+  Map<String, Object> getAttributes() {
+    return new HashMap<String, Object>(attributes);
+  }
+
+  /**
+   * Mark the session saved, clearing change tracking.
+   * @param authName Authorisation name now stored.
+   */
+  void markSaved(String authName) {
+    this.isNew = false;
+    this.originalId = id;
+    this.authName = authName;
+    this.isMaxInactiveIntervalChanged = false;
+    this.changedAttributeNames.clear();
+  }
+
+  private static String generateId() {
+    return UUID.randomUUID().toString();
+  }
+}
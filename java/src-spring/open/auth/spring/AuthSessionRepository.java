@@ -0,0 +1,364 @@
+package com.easydataservices.open.auth.spring;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+import org.springframework.session.DelegatingIndexResolver;
+import org.springframework.session.FindByIndexNameSessionRepository;
+import org.springframework.session.FlushMode;
+import org.springframework.session.IndexResolver;
+import org.springframework.session.PrincipalNameIndexResolver;
+import org.springframework.session.Session;
+import com.easydataservices.open.auth.AuthAttributesDao;
+import com.easydataservices.open.auth.AuthControlDao;
+import com.easydataservices.open.auth.AuthSessionDao;
+import com.easydataservices.open.auth.SessionConfig;
+import com.easydataservices.open.auth.StoreAttribute;
+import com.easydataservices.open.auth.StoreSession;
+import com.easydataservices.open.auth.util.Mask;
+
+/**
+ * Spring Session {@link FindByIndexNameSessionRepository} backed by an AUTH Service repository.
+ * <p>
+ * Attributes of recently used sessions are cached, tagged with the attribute generation they were loaded at, so that
+ * {@link #findById} only loads attributes changed since (delta load). {@link #save} sends only changed and removed attributes,
+ * in a single call. The principal name index maps onto the session authorisation name, which cannot be changed once set.
+ * <p>
+ * Each operation borrows a connection from the {@link DataSource}. {@link java.sql.SQLException}s are rethrown wrapped in
+ * {@link IllegalStateException}, since the Spring Session interfaces do not declare checked exceptions.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+public class AuthSessionRepository implements FindByIndexNameSessionRepository<AuthSession> {
+  private static final String className = AuthSessionRepository.class.getName();
+  private static final Logger logger = Logger.getLogger(className);
+  private static final Duration DEFAULT_MAX_INACTIVE_INTERVAL = Duration.ofMinutes(30);
+  private static final int MIN_IDLE_MINUTES = 1;
+  private static final int MAX_IDLE_MINUTES = 1440;
+  private DataSource dataSource;
+  private String schemaName;
+  private FlushMode flushMode = FlushMode.ON_SAVE;
+  private Duration defaultMaxInactiveInterval;
+  private IndexResolver<Session> indexResolver = new DelegatingIndexResolver<>(new PrincipalNameIndexResolver<>());
+  private Map<String, CachedAttributes> attributeCache;
+
+  /**
+   * Cached attributes for a session, tagged with the attribute generation they are current to.
+   */
+  private static class CachedAttributes {
+    private final int generationId;
+    private final Map<String, Object> attributes;
+
+    private CachedAttributes(int generationId, Map<String, Object> attributes) {
+      this.generationId = generationId;
+      this.attributes = attributes;
+    }
+  }
+
+  /**
+   * Constructor.
+   * @param dataSource {@link DataSource} for session repository database.
+   * @param schemaName Schema name for session repository.
+   * @param maxCachedSessions Maximum number of sessions for which attributes are cached for delta loading; 0 disables the
+   * cache.
+   */
+  public AuthSessionRepository(DataSource dataSource, String schemaName, int maxCachedSessions) {
+    logger.finer(() -> String.format("ENTRY %s %s %s %d", this, dataSource, schemaName, maxCachedSessions));
+    this.dataSource = dataSource;
+    this.schemaName = schemaName;
+    this.attributeCache = Collections.synchronizedMap(new LinkedHashMap<String, CachedAttributes>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CachedAttributes> eldest) {
+        return size() > maxCachedSessions;
+      }
+    });
+    logger.finer(() -> String.format("RETURN %s", this));
+  }
+
+  /**
+   * Set the flush mode. With {@link FlushMode#IMMEDIATE}, new sessions and every change are saved as they happen; with
+   * {@link FlushMode#ON_SAVE} (the default), changes are saved when {@link #save} is called.
+   * @param flushMode Flush mode.
+   */
+  public void setFlushMode(FlushMode flushMode) {
+    this.flushMode = flushMode;
+  }
+
+  /**
+   * Set the maximum inactive interval for new sessions. If not set then the store default ({@code SESCTL}
+   * column {@code MAX_IDLE_MINUTES}) applies. Stored in whole minutes, between 1 and 1440.
+   * @param defaultMaxInactiveInterval Default maximum inactive interval.
+   */
+  public void setDefaultMaxInactiveInterval(Duration defaultMaxInactiveInterval) {
+    this.defaultMaxInactiveInterval = defaultMaxInactiveInterval;
+  }
+
+  /**
+   * Set the index resolver used to derive the principal name on save. Defaults to a {@link PrincipalNameIndexResolver}.
+   * @param indexResolver Index resolver.
+   */
+  public void setIndexResolver(IndexResolver<Session> indexResolver) {
+    this.indexResolver = indexResolver;
+  }
+
+  @Override
+  public AuthSession createSession() {
+    AuthSession session = (defaultMaxInactiveInterval == null)
+      ? new AuthSession(this, DEFAULT_MAX_INACTIVE_INTERVAL, false)
+      : new AuthSession(this, defaultMaxInactiveInterval, true);
+    flushImmediateIfNecessary(session);
+    return session;
+  }
+
+  @Override
+  public void save(AuthSession session) {
+    final String maskedSessionId = Mask.last(session.getId(), 4);
+
+    logger.finer(() -> String.format("ENTRY %s %s", this, maskedSessionId));
+    try (Connection connection = dataSource.getConnection()) {
+      AuthControlDao controlDao = newControlDao(connection);
+      AuthAttributesDao attributesDao = newAttributesDao(connection);
+
+      // Build configuration changes. The authorisation name can only be set once.
+      SessionConfig sessionConfig = new SessionConfig();
+      boolean isConfigChanged = false;
+      String authName = session.getAuthName();
+      String principalName = indexResolver.resolveIndexesFor(session).get(PRINCIPAL_NAME_INDEX_NAME);
+      if (principalName != null && authName == null) {
+        authName = principalName;
+        sessionConfig.setAuthName(authName);
+        isConfigChanged = true;
+      }
+      if (session.isMaxInactiveIntervalChanged()) {
+        sessionConfig.setMaxIdleMinutes(toMaxIdleMinutes(session.getMaxInactiveInterval()));
+        isConfigChanged = true;
+      }
+
+      // Persist the session, changing its identifier if necessary.
+      if (session.isNew()) {
+        logger.fine(() -> String.format("Adding session... [%s %s]", this, maskedSessionId));
+        controlDao.addSession(session.getId(), sessionConfig);
+      }
+      else {
+        if (!session.getId().equals(session.getOriginalId())) {
+          logger.fine(() -> String.format("Changing session identifier... [%s %s]", this, maskedSessionId));
+          controlDao.changeSessionId(session.getOriginalId(), session.getId());
+          attributeCache.remove(session.getOriginalId());
+        }
+        if (isConfigChanged) {
+          logger.fine(() -> String.format("Changing session configuration... [%s %s]", this, maskedSessionId));
+          controlDao.changeSessionConfig(session.getId(), sessionConfig);
+        }
+      }
+
+      // Save changed and removed attributes in a single call.
+      Map<String, Object> attributes = session.getAttributes();
+      if (!session.getChangedAttributeNames().isEmpty()) {
+        logger.fine(() -> String.format("Saving %d changed attributes... [%s %s]", session.getChangedAttributeNames().size(),
+          this, maskedSessionId));
+        List<StoreAttribute> storeAttributes = new ArrayList<StoreAttribute>();
+        for (String attributeName : session.getChangedAttributeNames()) {
+          StoreAttribute storeAttribute = new StoreAttribute(attributeName);
+          storeAttribute.setObject(attributes.get(attributeName));
+          storeAttributes.add(storeAttribute);
+        }
+        attributesDao.saveAttributes(session.getId(), storeAttributes);
+      }
+
+      // The cached generation is left unchanged; the next delta load will pick up this save along with any others.
+      attributeCache.put(session.getId(), new CachedAttributes(session.getAttributeGenerationId(), attributes));
+      session.markSaved(authName);
+    }
+    catch (SQLException exception) {
+      logger.severe(() -> String.format("RETURN %s %s %s", this, maskedSessionId, exception.getMessage()));
+      throw new IllegalStateException("Unable to save session!", exception);
+    }
+    logger.finer(() -> String.format("RETURN %s %s", this, maskedSessionId));
+  }
+
+  @Override
+  public AuthSession findById(String id) {
+    final String maskedSessionId = Mask.last(id, 4);
+    AuthSession session = null;
+
+    logger.finer(() -> String.format("ENTRY %s %s", this, maskedSessionId));
+    try (Connection connection = dataSource.getConnection()) {
+      session = findById(id, true, connection);
+    }
+    catch (SQLException exception) {
+      logger.severe(() -> String.format("RETURN %s %s %s", this, maskedSessionId, exception.getMessage()));
+      throw new IllegalStateException("Unable to retrieve session!", exception);
+    }
+    logger.finer(() -> String.format("RETURN %s %s", this, maskedSessionId));
+    return session;
+  }
+
+  @Override
+  public void deleteById(String id) {
+    final String maskedSessionId = Mask.last(id, 4);
+
+    logger.finer(() -> String.format("ENTRY %s %s", this, maskedSessionId));
+    attributeCache.remove(id);
+    try (Connection connection = dataSource.getConnection()) {
+      newControlDao(connection).removeSession(id);
+    }
+    catch (SQLException exception) {
+      // SQLSTATE 72002 means the session does not exist, which is the desired outcome.
+      if (!"72002".equals(exception.getSQLState())) {
+        logger.severe(() -> String.format("RETURN %s %s %s", this, maskedSessionId, exception.getMessage()));
+        throw new IllegalStateException("Unable to delete session!", exception);
+      }
+    }
+    logger.finer(() -> String.format("RETURN %s %s", this, maskedSessionId));
+  }
+
+  /**
+   * Find sessions by index. Only {@link #PRINCIPAL_NAME_INDEX_NAME} is supported; it is matched against the session
+   * authorisation name. Unlike {@link #findById}, listing is not an access: the last accessed and expiry times of the
+   * sessions found are left unchanged, so that listing a principal's sessions does not keep them alive.
+   * @param indexName Index name.
+   * @param indexValue Index value (principal name).
+   * @return Map of session identifiers to sessions; empty if none are found or the index is not supported.
+   */
+  @Override
+  public Map<String, AuthSession> findByIndexNameAndIndexValue(String indexName, String indexValue) {
+    final String maskedIndexValue = Mask.last(indexValue, 4);
+    Map<String, AuthSession> sessions = new HashMap<String, AuthSession>();
+
+    logger.finer(() -> String.format("ENTRY %s %s %s", this, indexName, maskedIndexValue));
+    if (!PRINCIPAL_NAME_INDEX_NAME.equals(indexName) || indexValue == null) {
+      return sessions;
+    }
+    try (Connection connection = dataSource.getConnection()) {
+      List<String> sessionIds = newSessionDao(connection).getSessionIds(indexValue);
+      for (String sessionId : sessionIds) {
+        AuthSession session = findById(sessionId, false, connection);
+        if (session != null) {
+          sessions.put(sessionId, session);
+        }
+      }
+    }
+    catch (SQLException exception) {
+      logger.severe(() -> String.format("RETURN %s %s %s", this, maskedIndexValue, exception.getMessage()));
+      throw new IllegalStateException("Unable to retrieve sessions!", exception);
+    }
+    logger.finer(() -> String.format("RETURN %s %s %d", this, maskedIndexValue, sessions.size()));
+    return sessions;
+  }
+
+  /**
+   * Save the session if the flush mode is {@link FlushMode#IMMEDIATE}.
+   * @param session Session.
+   */
+  void flushImmediateIfNecessary(AuthSession session) {
+    if (flushMode == FlushMode.IMMEDIATE) {
+      save(session);
+    }
+  }
+
+  /**
+   * Retrieve a session and its attributes, using the attribute cache for a delta load where possible. Expired sessions are
+   * left for housekeeping.
+   * @param id Session identifier.
+   * @param isAccess {@code true} to update the last accessed time and move the expiry time forward; {@code false} to leave
+   * them unchanged.
+   * @param connection Connection to use.
+   * @return Session; {@code null} if not found or expired.
+   */
+  private AuthSession findById(String id, boolean isAccess, Connection connection) throws SQLException {
+    final String maskedSessionId = Mask.last(id, 4);
+
+    AuthSessionDao sessionDao = newSessionDao(connection);
+    StoreSession storeSession = isAccess ? sessionDao.getSession(id) : sessionDao.peekSession(id);
+    if (storeSession == null) {
+      attributeCache.remove(id);
+      return null;
+    }
+    if (storeSession.isExpired()) {
+      attributeCache.remove(id);
+      return null;
+    }
+
+    // Load attributes: none if the cached generation is current, a delta plus current names if it is older, otherwise all.
+    int generationId = storeSession.getAttributeGenerationId();
+    CachedAttributes cachedAttributes = attributeCache.get(id);
+    Map<String, Object> attributes;
+    if (cachedAttributes != null && cachedAttributes.generationId == generationId) {
+      attributes = cachedAttributes.attributes;
+    }
+    else {
+      int sinceGenerationId = (cachedAttributes != null && cachedAttributes.generationId < generationId)
+        ? cachedAttributes.generationId : 0;
+      attributes = (sinceGenerationId == 0) ? new HashMap<String, Object>()
+        : new HashMap<String, Object>(cachedAttributes.attributes);
+      logger.fine(() -> String.format("Loading attributes since generation %d... [%s %s]", sinceGenerationId, this,
+        maskedSessionId));
+      AuthAttributesDao attributesDao = newAttributesDao(connection);
+      for (StoreAttribute storeAttribute : attributesDao.getAttributes(id, sinceGenerationId)) {
+        attributes.put(storeAttribute.getAttributeName(), storeAttribute.getObject());
+      }
+
+      // A delta load does not return deleted attributes, so drop any cached attribute that no longer exists.
+      if (sinceGenerationId > 0) {
+        attributes.keySet().retainAll(attributesDao.getAttributeNames(id));
+      }
+      attributeCache.put(id, new CachedAttributes(generationId, attributes));
+    }
+
+    Duration maxInactiveInterval = (storeSession.getMaxIdleMinutes() == null) ? DEFAULT_MAX_INACTIVE_INTERVAL
+      : Duration.ofMinutes(storeSession.getMaxIdleMinutes());
+    return new AuthSession(this, id, storeSession.getCreatedTime(), storeSession.getLastAccessedTime(), maxInactiveInterval,
+      false, storeSession.getAuthName(), generationId, attributes);
+  }
+
+  /**
+   * Create a session DAO for a connection. Overridden by tests to substitute a stand-in store.
+   * @param connection Connection.
+   * @return Session DAO.
+   */
+  AuthSessionDao newSessionDao(Connection connection) {
+    return new AuthSessionDao(connection, schemaName);
+  }
+
+  /**
+   * Create a control DAO for a connection. Overridden by tests to substitute a stand-in store.
+   * @param connection Connection.
+   * @return Control DAO.
+   */
+  AuthControlDao newControlDao(Connection connection) {
+    return new AuthControlDao(connection, schemaName);
+  }
+
+  /**
+   * Create an attributes DAO for a connection. Overridden by tests to substitute a stand-in store.
+   * @param connection Connection.
+   * @return Attributes DAO.
+   */
+  AuthAttributesDao newAttributesDao(Connection connection) {
+    return new AuthAttributesDao(connection, schemaName);
+  }
+
+  /**
+   * Convert a maximum inactive interval to whole minutes within the range supported by the store.
+   * @param interval Maximum inactive interval.
+   * @return Maximum idle minutes; {@code null} for the store default.
+   */
+  private static Short toMaxIdleMinutes(Duration interval) {
+    if (interval == null) {
+      return null;
+    }
+    if (interval.isNegative()) {
+      return (short) MAX_IDLE_MINUTES;
+    }
+    long minutes = (interval.getSeconds() + 59) / 60;
+    return (short) Math.max(MIN_IDLE_MINUTES, Math.min(MAX_IDLE_MINUTES, minutes));
+  }
+}
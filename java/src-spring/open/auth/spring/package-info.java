@@ -0,0 +1,7 @@
+/**
+ * Provides a Spring Session {@code SessionRepository} backed by an AUTH Service repository. Classes in this package are built
+ * separately from the core API, and require Spring Session on the classpath.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+package com.easydataservices.open.auth.spring;
@@ -0,0 +1,259 @@
+package com.easydataservices.open.auth;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Struct;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.logging.Logger;
+import com.easydataservices.open.auth.SwitchStatus;
+import com.easydataservices.open.auth.util.TimeConvert;
+
+/**
+ * DAO methods for housekeeping (partition switching).
+ * <p>
+ * Move methods run until the move completes or a stop is requested, committing as they go. They should therefore be
+ * called on a dedicated connection, with status, pacing and stop requests made through a second instance of this class.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+public class AuthAdminDao {
+  private static final String className = AuthAdminDao.class.getName();
+  private static final Logger logger = Logger.getLogger(className);
+  private Connection connection;
+  private String schemaName;
+  private int queryTimeoutSeconds;
+
+  /**
+   * Constructor.
+   * @param connection {@link Connection} to session repository database.
+   * @param schemaName Schema name for session repository.
+   */
+  public AuthAdminDao(Connection connection, String schemaName) {
+    logger.finer(() -> String.format("ENTRY %s %s %s", this, connection, schemaName));
+    this.connection = connection;
+    this.schemaName = schemaName;
+    logger.finer(() -> String.format("RETURN %s", this));
+  }
+
+  /**
+   * Set the query timeout applied to each database call. Default 0 (no timeout).
+   * @param queryTimeoutSeconds Query timeout in seconds; 0 for no timeout.
+   */
+  public void setQueryTimeout(int queryTimeoutSeconds) {
+    this.queryTimeoutSeconds = queryTimeoutSeconds;
+  }
+
+  /**
+   * Initiate session partition switching. Has no effect if a session switch is already started.
+   */
+  public void startSessionSwitch() throws SQLException {
+    callProcedure("start_session_switch");
+  }
+
+  /**
+   * Move sessions to the new partition. Returns when all sessions have been moved or a stop is requested.
+   */
+  public void moveSessions() throws SQLException {
+    callProcedure("move_sessions");
+  }
+
+  /**
+   * Finalise session partition switching.
+   */
+  public void endSessionSwitch() throws SQLException {
+    callProcedure("end_session_switch");
+  }
+
+  /**
+   * Initiate attribute partition switching. Has no effect if an attribute switch is already started.
+   */
+  public void startAttributeSwitch() throws SQLException {
+    callProcedure("start_attribute_switch");
+  }
+
+  /**
+   * Move attributes to the new partition. Returns when all attributes have been moved or a stop is requested.
+   */
+  public void moveAttributes() throws SQLException {
+    callProcedure("move_attributes");
+  }
+
+  /**
+   * Finalise attribute partition switching.
+   */
+  public void endAttributeSwitch() throws SQLException {
+    callProcedure("end_attribute_switch");
+  }
+
+  /**
+   * Request that a running move stops at its next commit. The switch remains started.
+   */
+  public void requestMoveStop() throws SQLException {
+    callProcedure("request_move_stop");
+  }
+
+  /**
+   * Change move pacing values. A running move picks up the new values at its next commit.
+   * @param sessionMoveCommitLimit Sessions moved between commits; {@code null} to leave unchanged.
+   * @param sessionMoveSleepSeconds Seconds to sleep after each session move commit; {@code null} to leave unchanged.
+   * @param attributeMoveCommitLimit Attributes moved between commits; {@code null} to leave unchanged.
+   * @param attributeMoveSleepSeconds Seconds to sleep after each attribute move commit; {@code null} to leave unchanged.
+   */
+  public void changeMovePacing(Short sessionMoveCommitLimit, Short sessionMoveSleepSeconds, Short attributeMoveCommitLimit,
+    Short attributeMoveSleepSeconds) throws SQLException {
+    logger.finer(() -> String.format("ENTRY %s %s %s %s %s", this, sessionMoveCommitLimit, sessionMoveSleepSeconds,
+      attributeMoveCommitLimit, attributeMoveSleepSeconds));
+    String sql = "CALL " + schemaName + ".admin.change_move_pacing(?, ?, ?, ?)";
+    try (CallableStatement statement = connection.prepareCall(sql)) {
+      statement.setQueryTimeout(queryTimeoutSeconds);
+      logger.fine(() -> String.format("Calling stored procedure... [%s]", this));
+      statement.setObject(1, sessionMoveCommitLimit, Types.SMALLINT);
+      statement.setObject(2, sessionMoveSleepSeconds, Types.SMALLINT);
+      statement.setObject(3, attributeMoveCommitLimit, Types.SMALLINT);
+      statement.setObject(4, attributeMoveSleepSeconds, Types.SMALLINT);
+      statement.execute();
+    }
+    catch (Exception exception) {
+      logger.severe(() -> String.format("RETURN %s %s", this, exception.getMessage()));
+      throw exception;
+    }
+    logger.finer(() -> String.format("RETURN %s", this));
+  }
+
+  /**
+   * Record the phase of an unattended switch cycle. Move pacing values are saved when a cycle begins, and restored when it
+   * ends.
+   * @param cyclePhase S (session switch), A (attribute switch) or C (completing); {@code null} to end the cycle.
+   */
+  public void changeCyclePhase(String cyclePhase) throws SQLException {
+    logger.finer(() -> String.format("ENTRY %s %s", this, cyclePhase));
+    String sql = "CALL " + schemaName + ".admin.change_cycle_phase(?)";
+    try (CallableStatement statement = connection.prepareCall(sql)) {
+      statement.setQueryTimeout(queryTimeoutSeconds);
+      logger.fine(() -> String.format("Calling stored procedure... [%s]", this));
+      statement.setString(1, cyclePhase);
+      statement.execute();
+    }
+    catch (Exception exception) {
+      logger.severe(() -> String.format("RETURN %s %s", this, exception.getMessage()));
+      throw exception;
+    }
+    logger.finer(() -> String.format("RETURN %s", this));
+  }
+
+  /**
+   * Retrieve partition switch status and move pacing values.
+   * @return Switch status object.
+   */
+  public SwitchStatus getSwitchStatus() throws SQLException {
+    SwitchStatus switchStatus = new SwitchStatus();
+
+    logger.finer(() -> String.format("ENTRY %s", this));
+    String sql = "CALL " + schemaName + ".admin.get_switch_status(?)";
+    try (CallableStatement statement = connection.prepareCall(sql)) {
+      statement.setQueryTimeout(queryTimeoutSeconds);
+      logger.fine(() -> String.format("Calling stored procedure... [%s]", this));
+      statement.registerOutParameter(1, Types.STRUCT);
+      statement.execute();
+
+      logger.fine(() -> String.format("Getting return values... [%s]", this));
+      Struct switchStatusStruct = (Struct) statement.getObject(1);
+      Object[] switchStatusObject = switchStatusStruct.getAttributes();
+      switchStatus.setSwitching((boolean) switchStatusObject[0]);
+      if (switchStatusObject[1] != null) {
+        switchStatus.setSwitchStartTime(TimeConvert.toUtcInstant((Timestamp) switchStatusObject[1]));
+      }
+      switchStatus.setAttributeSwitching((boolean) switchStatusObject[2]);
+      if (switchStatusObject[3] != null) {
+        switchStatus.setAttributeSwitchStartTime(TimeConvert.toUtcInstant((Timestamp) switchStatusObject[3]));
+      }
+      switchStatus.setSessionMoveCommitLimit(((Integer) switchStatusObject[4]).shortValue());
+      switchStatus.setSessionMoveSleepSeconds(((Integer) switchStatusObject[5]).shortValue());
+      switchStatus.setAttributeMoveCommitLimit(((Integer) switchStatusObject[6]).shortValue());
+      switchStatus.setAttributeMoveSleepSeconds(((Integer) switchStatusObject[7]).shortValue());
+      switchStatus.setMoveStopRequested((boolean) switchStatusObject[8]);
+      switchStatus.setCyclePhase((String) switchStatusObject[9]);
+      switchStatus.setSavedSessionMoveCommitLimit(toShort(switchStatusObject[10]));
+      switchStatus.setSavedSessionMoveSleepSeconds(toShort(switchStatusObject[11]));
+      switchStatus.setSavedAttributeMoveCommitLimit(toShort(switchStatusObject[12]));
+      switchStatus.setSavedAttributeMoveSleepSeconds(toShort(switchStatusObject[13]));
+    }
+    catch (Exception exception) {
+      logger.severe(() -> String.format("RETURN %s %s", this, exception.getMessage()));
+      throw exception;
+    }
+    logger.finer(() -> String.format("RETURN %s", this));
+    return switchStatus;
+  }
+
+  /**
+   * Return count of sessions that have not been moved to the new partition.
+   * @return Unmoved session count; 0 if a session switch is not started.
+   */
+  public long getUnmovedSessionsCount() throws SQLException {
+    return callCountFunction("unmoved_sessions_count");
+  }
+
+  /**
+   * Return count of attributes that have not been moved to the new partition.
+   * @return Unmoved attribute count; 0 if an attribute switch is not started.
+   */
+  public long getUnmovedAttributesCount() throws SQLException {
+    return callCountFunction("unmoved_attributes_count");
+  }
+
+  /**
+   * Call an ADMIN module procedure that has no parameters.
+   * @param procedureName Procedure name.
+   */
+  private void callProcedure(String procedureName) throws SQLException {
+    logger.finer(() -> String.format("ENTRY %s %s", this, procedureName));
+    String sql = "CALL " + schemaName + ".admin." + procedureName + "()";
+    try (CallableStatement statement = connection.prepareCall(sql)) {
+      statement.setQueryTimeout(queryTimeoutSeconds);
+      logger.fine(() -> String.format("Calling stored procedure... [%s %s]", this, procedureName));
+      statement.execute();
+    }
+    catch (Exception exception) {
+      logger.severe(() -> String.format("RETURN %s %s %s", this, procedureName, exception.getMessage()));
+      throw exception;
+    }
+    logger.finer(() -> String.format("RETURN %s %s", this, procedureName));
+  }
+
+  /**
+   * Call an ADMIN module function that returns a count.
+   * @param functionName Function name.
+   * @return Count.
+   */
+  private long callCountFunction(String functionName) throws SQLException {
+    long count = 0;
+
+    logger.finer(() -> String.format("ENTRY %s %s", this, functionName));
+    String sql = "VALUES " + schemaName + ".admin." + functionName + "()";
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      statement.setQueryTimeout(queryTimeoutSeconds);
+      logger.fine(() -> String.format("Calling function... [%s %s]", this, functionName));
+      try (ResultSet resultSet = statement.executeQuery()) {
+        if (resultSet.next()) {
+          count = resultSet.getLong(1);
+        }
+      }
+    }
+    catch (Exception exception) {
+      logger.severe(() -> String.format("RETURN %s %s %s", this, functionName, exception.getMessage()));
+      throw exception;
+    }
+    final long returnCount = count;
+    logger.finer(() -> String.format("RETURN %s %s %d", this, functionName, returnCount));
+    return count;
+  }
+
+  private static Short toShort(Object value) {
+    return (value == null) ? null : ((Number) value).shortValue();
+  }
+}
@@ -13,7 +13,11 @@ import java.sql.SQLException;
 import java.sql.Struct;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 import com.easydataservices.open.auth.StoreAttribute;
 import com.easydataservices.open.auth.util.Mask;
@@ -28,6 +32,7 @@ public class AuthAttributesDao {
   private static final Logger logger = Logger.getLogger(className);
   private Connection connection;
   private String schemaName;
+  private int queryTimeoutSeconds;
   Array attributeArray;
 
   /**
@@ -42,11 +47,20 @@ public class AuthAttributesDao {
     logger.finer(() -> String.format("RETURN %s", this));
   }
 
+  /**
+   * Set the query timeout applied to each database call. Default 0 (no timeout).
+   * @param queryTimeoutSeconds Query timeout in seconds; 0 for no timeout.
+   */
+  public void setQueryTimeout(int queryTimeoutSeconds) {
+    this.queryTimeoutSeconds = queryTimeoutSeconds;
+  }
+
   /**
    * Retrieve attributes.
    * @param sessionId Session identifier.
    * @param sinceGenerationId Earliest attribute generation to include in returned attributes.
-   * @return List of session attributes. Deleted attributes have a {@code null} object.
+   * @return List of session attributes changed since the specified generation. Deleted attributes are not returned (see
+   * {@link #getAttributeNames}).
    */
   public List<StoreAttribute> getAttributes(String sessionId, int sinceGenerationId) throws SQLException {
     final String maskedSessionId = Mask.last(sessionId, 4);
@@ -55,6 +69,7 @@ public class AuthAttributesDao {
     logger.finer(() -> String.format("ENTRY %s %s", this, maskedSessionId));
     String sql = "CALL " + schemaName + ".attributes.get_attributes(?, ?, ?)";
     try (CallableStatement statement = connection.prepareCall(sql)) {
+      statement.setQueryTimeout(queryTimeoutSeconds);
       logger.fine(() -> String.format("Retrieving current attribute set id... [%s %s]", this, maskedSessionId));
       logger.fine(() -> String.format("Calling stored procedure... [%s %s]", this, maskedSessionId));
       statement.setString(1, sessionId);
@@ -99,6 +114,84 @@ public class AuthAttributesDao {
     return sessionAttributes;
   }
 
+  /**
+   * Retrieve the names of all current attributes, without their objects. Delta loads do not return deleted attributes, so
+   * a cache compares its attribute names with these to detect deletions.
+   * @param sessionId Session identifier.
+   * @return Set of attribute names.
+   */
+  public Set<String> getAttributeNames(String sessionId) throws SQLException {
+    final String maskedSessionId = Mask.last(sessionId, 4);
+    Set<String> attributeNames = new LinkedHashSet<String>();
+
+    logger.finer(() -> String.format("ENTRY %s %s", this, maskedSessionId));
+    String sql = "CALL " + schemaName + ".attributes.get_attributes(?, ?, ?)";
+    try (CallableStatement statement = connection.prepareCall(sql)) {
+      statement.setQueryTimeout(queryTimeoutSeconds);
+      logger.fine(() -> String.format("Calling stored procedure... [%s %s]", this, maskedSessionId));
+      statement.setString(1, sessionId);
+      statement.setNull(2, Types.INTEGER);
+      statement.registerOutParameter(3, Types.ARRAY);
+      statement.execute();
+
+      logger.fine(() -> String.format("Building attribute name set... [%s %s]", this, maskedSessionId));
+      Array attributeArray = statement.getArray(3);
+      if (attributeArray != null) {
+        Struct[] attributeStructs = (Struct[]) attributeArray.getArray();
+        for (int i = 0; i < attributeStructs.length; i++) {
+          attributeNames.add((String) attributeStructs[i].getAttributes()[0]);
+        }
+      }
+    }
+    catch (SQLException exception) {
+      logger.severe(() -> String.format("RETURN %s %s %s", this, maskedSessionId, exception.getMessage()));
+      throw exception;
+    }
+    logger.finer(() -> String.format("RETURN %s %s %d", this, maskedSessionId, attributeNames.size()));
+    return attributeNames;
+  }
+
+  /**
+   * Retrieve attributes in serialized form, without converting them to objects. Useful for caches that hold attribute bytes
+   * and convert them on demand.
+   * @param sessionId Session identifier.
+   * @param sinceGenerationId Earliest attribute generation to include in returned attributes.
+   * @return Map of attribute names to serialized objects, in retrieval order. Deleted attributes are not returned (see
+   * {@link #getAttributeNames}).
+   */
+  public Map<String, byte[]> getSerializedAttributes(String sessionId, int sinceGenerationId) throws SQLException {
+    final String maskedSessionId = Mask.last(sessionId, 4);
+    Map<String, byte[]> sessionAttributes = new LinkedHashMap<String, byte[]>();
+
+    logger.finer(() -> String.format("ENTRY %s %s", this, maskedSessionId));
+    String sql = "CALL " + schemaName + ".attributes.get_attributes(?, ?, ?)";
+    try (CallableStatement statement = connection.prepareCall(sql)) {
+      statement.setQueryTimeout(queryTimeoutSeconds);
+      logger.fine(() -> String.format("Calling stored procedure... [%s %s]", this, maskedSessionId));
+      statement.setString(1, sessionId);
+      statement.setInt(2, sinceGenerationId);
+      statement.registerOutParameter(3, Types.ARRAY);
+      statement.execute();
+
+      logger.fine(() -> String.format("Building serialized attribute map... [%s %s]", this, maskedSessionId));
+      Array attributeArray = statement.getArray(3);
+      if (attributeArray != null) {
+        Struct[] attributeStructs = (Struct[]) attributeArray.getArray();
+        for (int i = 0; i < attributeStructs.length; i++) {
+          Object[] attributeObject = attributeStructs[i].getAttributes();
+          Blob blob = (Blob) attributeObject[1];
+          sessionAttributes.put((String) attributeObject[0], blob.getBytes(1, (int) blob.length()));
+        }
+      }
+    }
+    catch (SQLException exception) {
+      logger.severe(() -> String.format("RETURN %s %s %s", this, maskedSessionId, exception.getMessage()));
+      throw exception;
+    }
+    logger.finer(() -> String.format("RETURN %s %s", this, maskedSessionId));
+    return sessionAttributes;
+  }
+
   /**
    * Save attributes. The list of attributes passed can include both changed and unchanged attributes; however, passing only
    * changed attributes is more efficient. Attributes passed with a {@code null} object are considered deleted.
@@ -106,11 +199,25 @@ public class AuthAttributesDao {
    * @param sessionAttributes List of session attributes.
    */
   public void saveAttributes(String sessionId, List<StoreAttribute> sessionAttributes) throws SQLException {
+    saveAttributes(sessionId, sessionAttributes, 0);
+  }
+
+  /**
+   * Save attributes, as {@link #saveAttributes(String, List)}, giving changed attributes and the session at least the
+   * specified attribute generation. If the session generation is below it, it is raised even if no attribute has changed.
+   * Used when copying a session from another repository, so that caches holding the source generation reload the copy.
+   * @param sessionId Session identifier.
+   * @param sessionAttributes List of session attributes.
+   * @param minGenerationId Minimum attribute generation; 0 for none.
+   */
+  public void saveAttributes(String sessionId, List<StoreAttribute> sessionAttributes, int minGenerationId)
+    throws SQLException {
     final String maskedSessionId = Mask.last(sessionId, 4);
 
-    logger.finer(() -> String.format("ENTRY %s %s", this, maskedSessionId));
-    String sql = "CALL " + schemaName + ".attributes.save_attributes(?, ?)";
+    logger.finer(() -> String.format("ENTRY %s %s %d", this, maskedSessionId, minGenerationId));
+    String sql = "CALL " + schemaName + ".attributes.save_attributes(?, ?, ?)";
     try (CallableStatement statement = connection.prepareCall(sql)) {
+      statement.setQueryTimeout(queryTimeoutSeconds);
       logger.fine(() -> String.format("Loading session attribute details into SQL array variable... [%s %s]", this, maskedSessionId));
       Struct[] attributeStructs = new Struct[sessionAttributes.size()];
       int i = 0;
@@ -142,6 +249,7 @@ public class AuthAttributesDao {
       logger.fine(() -> String.format("Calling stored procedure... [%s %s]", this, maskedSessionId));
       statement.setString(1, sessionId);
       statement.setArray(2, attributeArray);
+      statement.setInt(3, minGenerationId);
       statement.execute();
     }
     catch (SQLException exception) {
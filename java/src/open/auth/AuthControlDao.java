@@ -18,6 +18,7 @@ public class AuthControlDao {
   private static final Logger logger = Logger.getLogger(className);
   private Connection connection;
   private String schemaName;
+  private int queryTimeoutSeconds;
 
   /**
    * Constructor.
@@ -31,6 +32,14 @@ public class AuthControlDao {
     logger.finer(() -> String.format("RETURN %s", this));
   }
 
+  /**
+   * Set the query timeout applied to each database call. Default 0 (no timeout).
+   * @param queryTimeoutSeconds Query timeout in seconds; 0 for no timeout.
+   */
+  public void setQueryTimeout(int queryTimeoutSeconds) {
+    this.queryTimeoutSeconds = queryTimeoutSeconds;
+  }
+
   /**
    * Add a new session to the database.
    * @param sessionId Session identifier of new session.
@@ -43,6 +52,7 @@ public class AuthControlDao {
     Struct sessionConfigStruct = connection.createStruct(schemaName + ".CONTROL.SESSION_CONFIG", sessionConfig.getRowObject());
     String sql = "CALL " + schemaName + ".control.add_session(?, ?)";
     try (CallableStatement statement = connection.prepareCall(sql)) {
+      statement.setQueryTimeout(queryTimeoutSeconds);
       logger.fine(() -> String.format("Calling stored procedure... [%s %s]", this, maskedSessionId));
       statement.setString(1, sessionId);
       statement.setObject(2, sessionConfigStruct);
@@ -68,6 +78,7 @@ public class AuthControlDao {
     Struct sessionConfigStruct = connection.createStruct(schemaName + ".CONTROL.SESSION_CONFIG", sessionConfig.getRowObject());
     String sql = "CALL " + schemaName + ".control.change_session_config(?, ?)";
     try (CallableStatement statement = connection.prepareCall(sql)) {
+      statement.setQueryTimeout(queryTimeoutSeconds);
       logger.fine(() -> String.format("Calling stored procedure... [%s %s]", this, maskedSessionId));
       statement.setString(1, sessionId);
       statement.setObject(2, sessionConfigStruct);
@@ -90,6 +101,7 @@ public class AuthControlDao {
     logger.finer(() -> String.format("ENTRY %s %s", this, maskedSessionId));
     String sql = "CALL " + schemaName + ".control.remove_session(?)";
     try (CallableStatement statement = connection.prepareCall(sql)) {
+      statement.setQueryTimeout(queryTimeoutSeconds);
       logger.fine(() -> String.format("Calling stored procedure... [%s %s]", this, maskedSessionId));
       statement.setString(1, sessionId);
       statement.execute();
@@ -113,6 +125,7 @@ public class AuthControlDao {
     logger.finer(() -> String.format("ENTRY %s %s %s", this, maskedSessionId, maskedNewSessionId));
     String sql = "CALL " + schemaName + ".control.change_session_id(?, ?)";
     try (CallableStatement statement = connection.prepareCall(sql)) {
+      statement.setQueryTimeout(queryTimeoutSeconds);
       logger.fine(() -> String.format("Calling stored procedure... [%s %s]", this, maskedSessionId));
       statement.setString(1, sessionId);
       statement.setString(2, newSessionId);
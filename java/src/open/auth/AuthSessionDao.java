@@ -1,11 +1,14 @@
 package com.easydataservices.open.auth;
 
+import java.sql.Array;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Struct;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 import com.easydataservices.open.auth.StoreSession;
 import com.easydataservices.open.auth.util.Mask;
@@ -21,6 +24,7 @@ public class AuthSessionDao {
   private static final Logger logger = Logger.getLogger(className);
   private Connection connection;
   private String schemaName;
+  private int queryTimeoutSeconds;
 
   /**
    * Constructor.
@@ -35,17 +39,41 @@ public class AuthSessionDao {
   }
 
   /**
-   * Retrieve the specified session.
+   * Set the query timeout applied to each database call. Default 0 (no timeout).
+   * @param queryTimeoutSeconds Query timeout in seconds; 0 for no timeout.
+   */
+  public void setQueryTimeout(int queryTimeoutSeconds) {
+    this.queryTimeoutSeconds = queryTimeoutSeconds;
+  }
+
+  /**
+   * Retrieve the specified session. This is an access: if the session is not expired then its last accessed time is updated
+   * and its expiry time moved forward.
    * @param sessionId StoreSession identifier.
    * @return Store session object; {@code null} if no session is retrieved.
    */
   public StoreSession getSession(String sessionId) throws SQLException {
+    return getSession(sessionId, "get_session");
+  }
+
+  /**
+   * Retrieve the specified session without accessing it: the last accessed and expiry times are left unchanged. Use for
+   * listings, which must not keep sessions alive.
+   * @param sessionId StoreSession identifier.
+   * @return Store session object; {@code null} if no session is retrieved.
+   */
+  public StoreSession peekSession(String sessionId) throws SQLException {
+    return getSession(sessionId, "peek_session");
+  }
+
+  private StoreSession getSession(String sessionId, String procedureName) throws SQLException {
     final String maskedSessionId = Mask.last(sessionId, 4);
     StoreSession session = null;
 
-    logger.finer(() -> String.format("ENTRY %s %s", this, maskedSessionId));
-    String sql = "CALL " + schemaName + ".session.get_session(?, ?)";
+    logger.finer(() -> String.format("ENTRY %s %s %s", this, procedureName, maskedSessionId));
+    String sql = "CALL " + schemaName + ".session." + procedureName + "(?, ?)";
     try (CallableStatement statement = connection.prepareCall(sql)) {
+      statement.setQueryTimeout(queryTimeoutSeconds);
       logger.fine(() -> String.format("Calling stored procedure... [%s %s]", this, maskedSessionId));
       statement.setString(1, sessionId);
       statement.registerOutParameter(2, Types.STRUCT);
@@ -78,4 +106,40 @@ public class AuthSessionDao {
     logger.finer(() -> String.format("RETURN %s %s", this, maskedSessionId));
     return session;
   }
+
+  /**
+   * Retrieve the identifiers of sessions authenticated with the specified authorisation name. Logically deleted sessions are
+   * excluded; expired sessions are included.
+   * @param authName Authorisation name (e.g. user login).
+   * @return List of session identifiers; empty if there are none.
+   */
+  public List<String> getSessionIds(String authName) throws SQLException {
+    final String maskedAuthName = Mask.last(authName, 4);
+    List<String> sessionIds = new ArrayList<String>();
+
+    logger.finer(() -> String.format("ENTRY %s %s", this, maskedAuthName));
+    String sql = "CALL " + schemaName + ".session.get_session_ids(?, ?)";
+    try (CallableStatement statement = connection.prepareCall(sql)) {
+      statement.setQueryTimeout(queryTimeoutSeconds);
+      logger.fine(() -> String.format("Calling stored procedure... [%s %s]", this, maskedAuthName));
+      statement.setString(1, authName);
+      statement.registerOutParameter(2, Types.ARRAY);
+      statement.execute();
+
+      logger.fine(() -> String.format("Building session identifier list... [%s %s]", this, maskedAuthName));
+      Array sessionIdArray = statement.getArray(2);
+      if (sessionIdArray != null) {
+        Object[] sessionIdObjects = (Object[]) sessionIdArray.getArray();
+        for (int i = 0; i < sessionIdObjects.length; i++) {
+          sessionIds.add((String) sessionIdObjects[i]);
+        }
+      }
+    }
+    catch (Exception exception) {
+      logger.severe(() -> String.format("RETURN %s %s %s", this, maskedAuthName, exception.getMessage()));
+      throw exception;
+    }
+    logger.finer(() -> String.format("RETURN %s %s %d", this, maskedAuthName, sessionIds.size()));
+    return sessionIds;
+  }
 }
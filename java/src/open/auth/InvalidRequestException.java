@@ -0,0 +1,22 @@
+package com.easydataservices.open.auth;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientException;
+
+/**
+ * Thrown when a request is rejected by the AUTH Service as invalid, e.g. unsupported NULL input or a session identifier
+ * already in use (SQLSTATEs 72001, 72003, 72004 and 72011 to 72014). Retrying will not help.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+public class InvalidRequestException extends SQLNonTransientException {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Constructor.
+   * @param cause Original exception, whose message, SQLSTATE and vendor code are preserved.
+   */
+  public InvalidRequestException(SQLException cause) {
+    super(cause.getMessage(), cause.getSQLState(), cause.getErrorCode(), cause);
+  }
+}
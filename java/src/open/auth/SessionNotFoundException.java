@@ -0,0 +1,21 @@
+package com.easydataservices.open.auth;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientException;
+
+/**
+ * Thrown when a session does not exist (SQLSTATE 72002).
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+public class SessionNotFoundException extends SQLNonTransientException {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Constructor.
+   * @param cause Original exception, whose message, SQLSTATE and vendor code are preserved.
+   */
+  public SessionNotFoundException(SQLException cause) {
+    super(cause.getMessage(), cause.getSQLState(), cause.getErrorCode(), cause);
+  }
+}
@@ -0,0 +1,22 @@
+package com.easydataservices.open.auth;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientException;
+
+/**
+ * Thrown when a partition switch operation conflicts with the current switch state (SQLSTATEs 72021 to 72023 and
+ * 72091).
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+public class SwitchStateException extends SQLNonTransientException {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Constructor.
+   * @param cause Original exception, whose message, SQLSTATE and vendor code are preserved.
+   */
+  public SwitchStateException(SQLException cause) {
+    super(cause.getMessage(), cause.getSQLState(), cause.getErrorCode(), cause);
+  }
+}
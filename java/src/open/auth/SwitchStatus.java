@@ -0,0 +1,249 @@
+package com.easydataservices.open.auth;
+
+import java.time.Instant;
+
+/**
+ * SwitchStatus object, representing partition switch status and move pacing values from the session control table.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+public class SwitchStatus {
+  private boolean isSwitching;
+  private Instant switchStartTime;
+  private boolean isAttributeSwitching;
+  private Instant attributeSwitchStartTime;
+  private short sessionMoveCommitLimit;
+  private short sessionMoveSleepSeconds;
+  private short attributeMoveCommitLimit;
+  private short attributeMoveSleepSeconds;
+  private boolean isMoveStopRequested;
+  private String cyclePhase;
+  private Short savedSessionMoveCommitLimit;
+  private Short savedSessionMoveSleepSeconds;
+  private Short savedAttributeMoveCommitLimit;
+  private Short savedAttributeMoveSleepSeconds;
+
+  /**
+   * Return flag indicating whether or not a session partition switch is started.
+   * @return {@code true} if a session switch is started; otherwise {@code false}.
+   */
+  public boolean isSwitching() {
+    return isSwitching;
+  }
+
+  /**
+   * Return the time that the session partition switch was started.
+   * @return Switch start time; {@code null} if a session switch is not started.
+   */
+  public Instant getSwitchStartTime() {
+    return switchStartTime;
+  }
+
+  /**
+   * Return flag indicating whether or not an attribute partition switch is started.
+   * @return {@code true} if an attribute switch is started; otherwise {@code false}.
+   */
+  public boolean isAttributeSwitching() {
+    return isAttributeSwitching;
+  }
+
+  /**
+   * Return the time that the attribute partition switch was started.
+   * @return Switch start time; {@code null} if an attribute switch is not started.
+   */
+  public Instant getAttributeSwitchStartTime() {
+    return attributeSwitchStartTime;
+  }
+
+  /**
+   * Return the number of sessions moved between commits.
+   * @return Session move commit limit.
+   */
+  public short getSessionMoveCommitLimit() {
+    return sessionMoveCommitLimit;
+  }
+
+  /**
+   * Return the number of seconds to sleep after each session move commit.
+   * @return Session move sleep seconds.
+   */
+  public short getSessionMoveSleepSeconds() {
+    return sessionMoveSleepSeconds;
+  }
+
+  /**
+   * Return the number of attributes moved between commits.
+   * @return Attribute move commit limit.
+   */
+  public short getAttributeMoveCommitLimit() {
+    return attributeMoveCommitLimit;
+  }
+
+  /**
+   * Return the number of seconds to sleep after each attribute move commit.
+   * @return Attribute move sleep seconds.
+   */
+  public short getAttributeMoveSleepSeconds() {
+    return attributeMoveSleepSeconds;
+  }
+
+  /**
+   * Return flag indicating whether or not a running move has been requested to stop.
+   * @return {@code true} if a move stop is requested; otherwise {@code false}.
+   */
+  public boolean isMoveStopRequested() {
+    return isMoveStopRequested;
+  }
+
+  /**
+   * Return the phase of an unattended switch cycle: S (session switch), A (attribute switch) or C (completing).
+   * @return Cycle phase; {@code null} if no cycle is in progress.
+   */
+  public String getCyclePhase() {
+    return cyclePhase;
+  }
+
+  /**
+   * Return the session move commit limit saved when the switch cycle began.
+   * @return Saved session move commit limit; {@code null} if no cycle is in progress.
+   */
+  public Short getSavedSessionMoveCommitLimit() {
+    return savedSessionMoveCommitLimit;
+  }
+
+  /**
+   * Return the session move sleep seconds saved when the switch cycle began.
+   * @return Saved session move sleep seconds; {@code null} if no cycle is in progress.
+   */
+  public Short getSavedSessionMoveSleepSeconds() {
+    return savedSessionMoveSleepSeconds;
+  }
+
+  /**
+   * Return the attribute move commit limit saved when the switch cycle began.
+   * @return Saved attribute move commit limit; {@code null} if no cycle is in progress.
+   */
+  public Short getSavedAttributeMoveCommitLimit() {
+    return savedAttributeMoveCommitLimit;
+  }
+
+  /**
+   * Return the attribute move sleep seconds saved when the switch cycle began.
+   * @return Saved attribute move sleep seconds; {@code null} if no cycle is in progress.
+   */
+  public Short getSavedAttributeMoveSleepSeconds() {
+    return savedAttributeMoveSleepSeconds;
+  }
+
+  /**
+   * Set flag indicating whether or not a session partition switch is started.
+   * @param isSwitching {@code true} if a session switch is started; otherwise {@code false}.
+   */
+  protected void setSwitching(boolean isSwitching) {
+    this.isSwitching = isSwitching;
+  }
+
+  /**
+   * Set the time that the session partition switch was started.
+   * @param switchStartTime Switch start time.
+   */
+  protected void setSwitchStartTime(Instant switchStartTime) {
+    this.switchStartTime = switchStartTime;
+  }
+
+  /**
+   * Set flag indicating whether or not an attribute partition switch is started.
+   * @param isAttributeSwitching {@code true} if an attribute switch is started; otherwise {@code false}.
+   */
+  protected void setAttributeSwitching(boolean isAttributeSwitching) {
+    this.isAttributeSwitching = isAttributeSwitching;
+  }
+
+  /**
+   * Set the time that the attribute partition switch was started.
+   * @param attributeSwitchStartTime Switch start time.
+   */
+  protected void setAttributeSwitchStartTime(Instant attributeSwitchStartTime) {
+    this.attributeSwitchStartTime = attributeSwitchStartTime;
+  }
+
+  /**
+   * Set the number of sessions moved between commits.
+   * @param sessionMoveCommitLimit Session move commit limit.
+   */
+  protected void setSessionMoveCommitLimit(short sessionMoveCommitLimit) {
+    this.sessionMoveCommitLimit = sessionMoveCommitLimit;
+  }
+
+  /**
+   * Set the number of seconds to sleep after each session move commit.
+   * @param sessionMoveSleepSeconds Session move sleep seconds.
+   */
+  protected void setSessionMoveSleepSeconds(short sessionMoveSleepSeconds) {
+    this.sessionMoveSleepSeconds = sessionMoveSleepSeconds;
+  }
+
+  /**
+   * Set the number of attributes moved between commits.
+   * @param attributeMoveCommitLimit Attribute move commit limit.
+   */
+  protected void setAttributeMoveCommitLimit(short attributeMoveCommitLimit) {
+    this.attributeMoveCommitLimit = attributeMoveCommitLimit;
+  }
+
+  /**
+   * Set the number of seconds to sleep after each attribute move commit.
+   * @param attributeMoveSleepSeconds Attribute move sleep seconds.
+   */
+  protected void setAttributeMoveSleepSeconds(short attributeMoveSleepSeconds) {
+    this.attributeMoveSleepSeconds = attributeMoveSleepSeconds;
+  }
+
+  /**
+   * Set flag indicating whether or not a running move has been requested to stop.
+   * @param isMoveStopRequested {@code true} if a move stop is requested; otherwise {@code false}.
+   */
+  protected void setMoveStopRequested(boolean isMoveStopRequested) {
+    this.isMoveStopRequested = isMoveStopRequested;
+  }
+
+  /**
+   * Set the phase of an unattended switch cycle.
+   * @param cyclePhase Cycle phase.
+   */
+  protected void setCyclePhase(String cyclePhase) {
+    this.cyclePhase = cyclePhase;
+  }
+
+  /**
+   * Set the session move commit limit saved when the switch cycle began.
+   * @param savedSessionMoveCommitLimit Saved session move commit limit.
+   */
+  protected void setSavedSessionMoveCommitLimit(Short savedSessionMoveCommitLimit) {
+    this.savedSessionMoveCommitLimit = savedSessionMoveCommitLimit;
+  }
+
+  /**
+   * Set the session move sleep seconds saved when the switch cycle began.
+   * @param savedSessionMoveSleepSeconds Saved session move sleep seconds.
+   */
+  protected void setSavedSessionMoveSleepSeconds(Short savedSessionMoveSleepSeconds) {
+    this.savedSessionMoveSleepSeconds = savedSessionMoveSleepSeconds;
+  }
+
+  /**
+   * Set the attribute move commit limit saved when the switch cycle began.
+   * @param savedAttributeMoveCommitLimit Saved attribute move commit limit.
+   */
+  protected void setSavedAttributeMoveCommitLimit(Short savedAttributeMoveCommitLimit) {
+    this.savedAttributeMoveCommitLimit = savedAttributeMoveCommitLimit;
+  }
+
+  /**
+   * Set the attribute move sleep seconds saved when the switch cycle began.
+   * @param savedAttributeMoveSleepSeconds Saved attribute move sleep seconds.
+   */
+  protected void setSavedAttributeMoveSleepSeconds(Short savedAttributeMoveSleepSeconds) {
+    this.savedAttributeMoveSleepSeconds = savedAttributeMoveSleepSeconds;
+  }
+}
@@ -0,0 +1,203 @@
+package com.easydataservices.open.auth.admin;
+
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.function.Supplier;
+
+/**
+ * SwitchConfig object, for passing configuration properties to a {@link SwitchOrchestrator}.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+public class SwitchConfig {
+  private LocalTime windowStartTime;
+  private LocalTime windowEndTime;
+  private Duration pollInterval = Duration.ofSeconds(5);
+  private Duration countInterval = Duration.ofMinutes(1);
+  private Duration targetLatency = Duration.ofMillis(50);
+  private Duration stopLatency = Duration.ofMillis(250);
+  private int minCommitLimit = 10;
+  private int maxCommitLimit = 500;
+  private int commitLimitIncrement = 10;
+  private int minSleepSeconds = 0;
+  private int maxSleepSeconds = 5;
+  private Supplier<Duration> latencySampler;
+
+  /**
+   * Set the daily low-traffic window in which moves may run. If not set then moves may run at any time. The window may span
+   * midnight (e.g. 23:00 to 04:00).
+   * @param windowStartTime Local start time of the window.
+   * @param windowEndTime Local end time of the window.
+   */
+  public void setWindow(LocalTime windowStartTime, LocalTime windowEndTime) {
+    this.windowStartTime = windowStartTime;
+    this.windowEndTime = windowEndTime;
+  }
+
+  /**
+   * Set the interval between latency samples, pacing adjustments and progress updates. Default 5 seconds.
+   * @param pollInterval Poll interval.
+   */
+  public void setPollInterval(Duration pollInterval) {
+    this.pollInterval = pollInterval;
+  }
+
+  /**
+   * Set the minimum interval between counts of unmoved rows. Counting scans the old partition, so it is done much less often
+   * than polling; between counts, progress reports the last count. Default 1 minute.
+   * @param countInterval Count interval.
+   */
+  public void setCountInterval(Duration countInterval) {
+    this.countInterval = countInterval;
+  }
+
+  /**
+   * Set the foreground latency below which move pacing is increased, and above which it is decreased. A paused move is
+   * resumed only once latency has fallen back to this value. Default 50 milliseconds.
+   * @param targetLatency Target latency.
+   */
+  public void setTargetLatency(Duration targetLatency) {
+    this.targetLatency = targetLatency;
+  }
+
+  /**
+   * Set the foreground latency above which a running move is stopped (paused). Default 250 milliseconds.
+   * @param stopLatency Stop latency.
+   */
+  public void setStopLatency(Duration stopLatency) {
+    this.stopLatency = stopLatency;
+  }
+
+  /**
+   * Set the range of the move commit limit (rows moved between commits). Default 10 to 500.
+   * @param minCommitLimit Minimum commit limit (at least 1).
+   * @param maxCommitLimit Maximum commit limit.
+   */
+  public void setCommitLimitRange(int minCommitLimit, int maxCommitLimit) {
+    this.minCommitLimit = minCommitLimit;
+    this.maxCommitLimit = maxCommitLimit;
+  }
+
+  /**
+   * Set the amount by which the commit limit is increased while latency is on target. Default 10.
+   * @param commitLimitIncrement Commit limit increment.
+   */
+  public void setCommitLimitIncrement(int commitLimitIncrement) {
+    this.commitLimitIncrement = commitLimitIncrement;
+  }
+
+  /**
+   * Set the range of the move sleep interval (seconds slept after each commit). Default 0 to 5.
+   * @param minSleepSeconds Minimum sleep seconds.
+   * @param maxSleepSeconds Maximum sleep seconds.
+   */
+  public void setSleepSecondsRange(int minSleepSeconds, int maxSleepSeconds) {
+    this.minSleepSeconds = minSleepSeconds;
+    this.maxSleepSeconds = maxSleepSeconds;
+  }
+
+  /**
+   * Set the source of foreground latency measurements, e.g. a recent percentile from application metrics. If not set then
+   * the orchestrator times a session lookup against the repository.
+   * @param latencySampler Latency sampler.
+   */
+  public void setLatencySampler(Supplier<Duration> latencySampler) {
+    this.latencySampler = latencySampler;
+  }
+
+  /**
+   * Return the local start time of the low-traffic window.
+   * @return Window start time; {@code null} if no window is set.
+   */
+  public LocalTime getWindowStartTime() {
+    return windowStartTime;
+  }
+
+  /**
+   * Return the local end time of the low-traffic window.
+   * @return Window end time; {@code null} if no window is set.
+   */
+  public LocalTime getWindowEndTime() {
+    return windowEndTime;
+  }
+
+  /**
+   * Return the poll interval.
+   * @return Poll interval.
+   */
+  public Duration getPollInterval() {
+    return pollInterval;
+  }
+
+  /**
+   * Return the count interval.
+   * @return Count interval.
+   */
+  public Duration getCountInterval() {
+    return countInterval;
+  }
+
+  /**
+   * Return the target latency.
+   * @return Target latency.
+   */
+  public Duration getTargetLatency() {
+    return targetLatency;
+  }
+
+  /**
+   * Return the stop latency.
+   * @return Stop latency.
+   */
+  public Duration getStopLatency() {
+    return stopLatency;
+  }
+
+  /**
+   * Return the minimum commit limit.
+   * @return Minimum commit limit.
+   */
+  public int getMinCommitLimit() {
+    return minCommitLimit;
+  }
+
+  /**
+   * Return the maximum commit limit.
+   * @return Maximum commit limit.
+   */
+  public int getMaxCommitLimit() {
+    return maxCommitLimit;
+  }
+
+  /**
+   * Return the commit limit increment.
+   * @return Commit limit increment.
+   */
+  public int getCommitLimitIncrement() {
+    return commitLimitIncrement;
+  }
+
+  /**
+   * Return the minimum sleep seconds.
+   * @return Minimum sleep seconds.
+   */
+  public int getMinSleepSeconds() {
+    return minSleepSeconds;
+  }
+
+  /**
+   * Return the maximum sleep seconds.
+   * @return Maximum sleep seconds.
+   */
+  public int getMaxSleepSeconds() {
+    return maxSleepSeconds;
+  }
+
+  /**
+   * Return the latency sampler.
+   * @return Latency sampler; {@code null} if not set.
+   */
+  public Supplier<Duration> getLatencySampler() {
+    return latencySampler;
+  }
+}
@@ -0,0 +1,462 @@
+package com.easydataservices.open.auth.admin;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+import com.easydataservices.open.auth.AuthAdminDao;
+import com.easydataservices.open.auth.AuthSessionDao;
+import com.easydataservices.open.auth.SwitchStatus;
+import com.easydataservices.open.auth.admin.SwitchProgress.Phase;
+
+/**
+ * Runs a full partition switch cycle (session switch followed by attribute switch) unattended.
+ * <p>
+ * Moves only run inside the configured low-traffic window. While a move runs, foreground latency is sampled and the
+ * {@code SESCTL} commit limit and sleep values are adjusted: the commit limit grows while latency is on target,
+ * and is halved (with a longer sleep) when it is not. If latency exceeds the stop latency, or the window closes, the move is
+ * stopped and resumed later. The switch itself remains started while paused.
+ * <p>
+ * All switch state is held in the database, including the cycle phase and the pacing values in force when the cycle began.
+ * A cycle interrupted by a crash is therefore resumed by calling {@link #runCycle} again: it continues from the recorded
+ * phase, and the original pacing values are restored when the cycle ends.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+public class SwitchOrchestrator {
+  private static final String className = SwitchOrchestrator.class.getName();
+  private static final Logger logger = Logger.getLogger(className);
+  private static final String PROBE_SESSION_ID = "switch-orchestrator-latency-probe";
+  private static final String CYCLE_SESSIONS = "S";
+  private static final String CYCLE_ATTRIBUTES = "A";
+  private static final String CYCLE_COMPLETING = "C";
+  private static final Duration FAILED_PROBE_LATENCY = Duration.ofMinutes(5);
+  private DataSource dataSource;
+  private String schemaName;
+  private SwitchConfig config;
+  private volatile SwitchProgress progress = new SwitchProgress(Phase.IDLE, false, 0, 0, null);
+  private volatile boolean isShutdownRequested;
+
+  /**
+   * Constructor.
+   * @param dataSource {@link DataSource} for session repository database. Two connections are used while a cycle runs.
+   * @param schemaName Schema name for session repository.
+   * @param config Orchestrator configuration.
+   */
+  public SwitchOrchestrator(DataSource dataSource, String schemaName, SwitchConfig config) {
+    logger.finer(() -> String.format("ENTRY %s %s %s", this, dataSource, schemaName));
+    this.dataSource = dataSource;
+    this.schemaName = schemaName;
+    this.config = config;
+    logger.finer(() -> String.format("RETURN %s", this));
+  }
+
+  /**
+   * Return a snapshot of current progress. Safe to call from any thread.
+   * @return Progress snapshot.
+   */
+  public SwitchProgress getProgress() {
+    return progress;
+  }
+
+  /**
+   * Request that a running cycle stops. Any running move is stopped at its next commit, leaving the switch started so that
+   * a later call to {@link #runCycle} resumes it.
+   */
+  public void shutdown() {
+    logger.fine(() -> String.format("Shutdown requested... [%s]", this));
+    isShutdownRequested = true;
+  }
+
+  /**
+   * Run (or resume) a full switch cycle, waiting for the low-traffic window as necessary. Blocks until the cycle is complete
+   * or {@link #shutdown} is called.
+   * @return {@code true} if the cycle completed; {@code false} if it was shut down first.
+   */
+  public boolean runCycle() throws SQLException, InterruptedException {
+    boolean isComplete = false;
+
+    logger.finer(() -> String.format("ENTRY %s", this));
+    isShutdownRequested = false;
+    ExecutorService moveExecutor = Executors.newSingleThreadExecutor();
+    try (
+      Connection controlConnection = dataSource.getConnection();
+      Connection moveConnection = dataSource.getConnection();
+    )
+    {
+      AuthAdminDao controlDao = newAdminDao(controlConnection);
+      AuthAdminDao moveDao = newAdminDao(moveConnection);
+      AuthSessionDao probeDao = newSessionDao(controlConnection);
+
+      if (waitUntilRunnable(probeDao)) {
+        SwitchStatus switchStatus = controlDao.getSwitchStatus();
+        if (switchStatus.getCyclePhase() == null) {
+          logger.fine(() -> String.format("Beginning switch cycle... [%s]", this));
+          controlDao.changeCyclePhase(switchStatus.isAttributeSwitching() ? CYCLE_ATTRIBUTES : CYCLE_SESSIONS);
+        }
+        else {
+          logger.info(() -> String.format("Resuming switch cycle at phase %s... [%s]", switchStatus.getCyclePhase(), this));
+        }
+        isComplete = runPhases(controlDao, moveDao, probeDao, moveExecutor);
+      }
+    }
+    catch (SQLException | InterruptedException exception) {
+      logger.severe(() -> String.format("RETURN %s %s", this, exception.getMessage()));
+      throw exception;
+    }
+    finally {
+      moveExecutor.shutdownNow();
+    }
+    final boolean returnIsComplete = isComplete;
+    logger.finer(() -> String.format("RETURN %s %s", this, returnIsComplete));
+    return isComplete;
+  }
+
+  /**
+   * Step through the cycle from its recorded phase. A started switch takes precedence over the recorded phase, which holds
+   * the step to take once no switch is started. The next phase is recorded before each switch is ended, so that the cycle
+   * resumes at the right step whenever it is interrupted.
+   * @return {@code true} if the cycle completed; {@code false} if shut down first.
+   */
+  private boolean runPhases(AuthAdminDao controlDao, AuthAdminDao moveDao, AuthSessionDao probeDao,
+    ExecutorService moveExecutor) throws SQLException, InterruptedException {
+    while (true) {
+      SwitchStatus switchStatus = controlDao.getSwitchStatus();
+      if (switchStatus.isSwitching()) {
+        if (!runPhase(Phase.SESSIONS, CYCLE_ATTRIBUTES, controlDao, moveDao, probeDao, moveExecutor)) {
+          return false;
+        }
+      }
+      else if (switchStatus.isAttributeSwitching()) {
+        if (!runPhase(Phase.ATTRIBUTES, CYCLE_COMPLETING, controlDao, moveDao, probeDao, moveExecutor)) {
+          return false;
+        }
+      }
+      else if (CYCLE_SESSIONS.equals(switchStatus.getCyclePhase())) {
+        logger.fine(() -> String.format("Starting session switch... [%s]", this));
+        controlDao.startSessionSwitch();
+      }
+      else if (CYCLE_ATTRIBUTES.equals(switchStatus.getCyclePhase())) {
+        logger.fine(() -> String.format("Starting attribute switch... [%s]", this));
+        controlDao.startAttributeSwitch();
+      }
+      else {
+        logger.fine(() -> String.format("Ending switch cycle... [%s]", this));
+        controlDao.changeCyclePhase(null);
+        progress = new SwitchProgress(Phase.COMPLETE, false, 0, 0, null);
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Move all rows for a phase, then end the switch. Moves are paused and resumed as latency and the window dictate.
+   * Pacing starts from the values saved when the cycle began, and is restored to them when the phase ends.
+   * @param nextCyclePhase Cycle phase to record before the switch is ended.
+   * @return {@code true} if the switch was ended; {@code false} if shut down first.
+   */
+  private boolean runPhase(Phase phase, String nextCyclePhase, AuthAdminDao controlDao, AuthAdminDao moveDao,
+    AuthSessionDao probeDao, ExecutorService moveExecutor) throws SQLException, InterruptedException {
+    final Instant phaseStartTime = Instant.now();
+    final long rowsAtStart = getUnmovedCount(phase, controlDao);
+    long rowsRemaining = rowsAtStart;
+    Instant countTime = phaseStartTime;
+    SwitchStatus switchStatus = controlDao.getSwitchStatus();
+    final short originalCommitLimit = getOriginalCommitLimit(phase, switchStatus);
+    final short originalSleepSeconds = getOriginalSleepSeconds(phase, switchStatus);
+    int commitLimit = originalCommitLimit;
+    int sleepSeconds = originalSleepSeconds;
+
+    logger.fine(() -> String.format("Running %s phase with %d unmoved rows... [%s]", phase, rowsAtStart, this));
+    progress = new SwitchProgress(phase, false, rowsAtStart, rowsAtStart, phaseStartTime);
+    changePacing(phase, controlDao, originalCommitLimit, originalSleepSeconds);
+    try {
+      while (true) {
+        if (!waitUntilRunnable(probeDao)) {
+          return false;
+        }
+        progress = progress.withPaused(false);
+
+        // Run the move on its own connection, and monitor it from this thread. However monitoring ends, the move is stopped
+        // and waited for, so that it is never left running unpaced or on a connection that is about to be closed.
+        Future<Void> move = moveExecutor.submit(() -> {
+          if (phase == Phase.SESSIONS) {
+            moveDao.moveSessions();
+          }
+          else {
+            moveDao.moveAttributes();
+          }
+          return null;
+        });
+        boolean isStopRequested = false;
+        try {
+          while (!move.isDone()) {
+            try {
+              move.get(config.getPollInterval().toMillis(), TimeUnit.MILLISECONDS);
+              break;
+            }
+            catch (TimeoutException exception) {
+              // Move still running.
+            }
+            catch (ExecutionException exception) {
+              break;
+            }
+            if (isStopRequested) {
+              continue;
+            }
+            if (Duration.between(countTime, Instant.now()).compareTo(config.getCountInterval()) >= 0) {
+              rowsRemaining = getUnmovedCount(phase, controlDao);
+              countTime = Instant.now();
+            }
+            Duration latency = sampleLatency(probeDao);
+            if (isShutdownRequested || !isInWindow(getLocalTime()) || latency.compareTo(config.getStopLatency()) > 0) {
+              logger.info(() -> String.format("Stopping %s move (latency %s)... [%s]", phase, describeLatency(latency), this));
+              controlDao.requestMoveStop();
+              isStopRequested = true;
+              progress = new SwitchProgress(phase, true, rowsAtStart, rowsRemaining, phaseStartTime);
+              continue;
+            }
+            int newCommitLimit;
+            int newSleepSeconds;
+            if (latency.compareTo(config.getTargetLatency()) <= 0) {
+              newCommitLimit = Math.min(config.getMaxCommitLimit(), commitLimit + config.getCommitLimitIncrement());
+              newSleepSeconds = Math.max(config.getMinSleepSeconds(), sleepSeconds - 1);
+            }
+            else {
+              newCommitLimit = Math.max(config.getMinCommitLimit(), commitLimit / 2);
+              newSleepSeconds = Math.min(config.getMaxSleepSeconds(), sleepSeconds + 1);
+            }
+            newCommitLimit = Math.max(1, Math.min(Short.MAX_VALUE, newCommitLimit));
+            newSleepSeconds = Math.max(0, Math.min(Short.MAX_VALUE, newSleepSeconds));
+            if (newCommitLimit != commitLimit || newSleepSeconds != sleepSeconds) {
+              commitLimit = newCommitLimit;
+              sleepSeconds = newSleepSeconds;
+              changePacing(phase, controlDao, (short) commitLimit, (short) sleepSeconds);
+            }
+            progress = new SwitchProgress(phase, false, rowsAtStart, rowsRemaining, phaseStartTime);
+            final SwitchProgress currentProgress = progress;
+            logger.fine(() -> String.format("%s [%s]", currentProgress, this));
+          }
+        }
+        finally {
+          if (!move.isDone()) {
+            stopMove(phase, controlDao, move, isStopRequested);
+          }
+        }
+
+        // Check the move outcome. SQLSTATE 72091 means another process has already completed the switch.
+        try {
+          move.get();
+        }
+        catch (ExecutionException exception) {
+          if (exception.getCause() instanceof SQLException) {
+            SQLException sqlException = (SQLException) exception.getCause();
+            if ("72091".equals(sqlException.getSQLState())) {
+              logger.info(() -> String.format("%s switch completed by another process [%s]", phase, this));
+              controlDao.changeCyclePhase(nextCyclePhase);
+              return true;
+            }
+            throw sqlException;
+          }
+          throw new SQLException("Unexpected exception occurred when moving rows!", "72099", exception.getCause());
+        }
+
+        // A stopped move leaves rows behind, so it is resumed once runnable again.
+        if (isStopRequested) {
+          continue;
+        }
+
+        // Otherwise end the switch; the end procedure checks that the old partition is empty, so no count is needed here.
+        // SQLSTATE 72022 means rows remain (e.g. skipped because they were locked), so the move is repeated; 72021 means
+        // another process has already ended the switch.
+        controlDao.changeCyclePhase(nextCyclePhase);
+        try {
+          if (phase == Phase.SESSIONS) {
+            controlDao.endSessionSwitch();
+          }
+          else {
+            controlDao.endAttributeSwitch();
+          }
+          progress = new SwitchProgress(phase, false, rowsAtStart, 0, phaseStartTime);
+          logger.info(() -> String.format("%s switch ended [%s]", phase, this));
+          return true;
+        }
+        catch (SQLException exception) {
+          if ("72021".equals(exception.getSQLState())) {
+            return true;
+          }
+          if (!"72022".equals(exception.getSQLState())) {
+            throw exception;
+          }
+        }
+      }
+    }
+    finally {
+      // A failed restore is not fatal: the saved values are restored again when the cycle ends.
+      try {
+        changePacing(phase, controlDao, originalCommitLimit, originalSleepSeconds);
+      }
+      catch (SQLException exception) {
+        logger.warning(() -> String.format("Pacing not restored: %s [%s]", exception.getMessage(), this));
+      }
+    }
+  }
+
+  /**
+   * Stop a running move and wait for it to finish. Stop requests are repeated until one succeeds (e.g. after a lock
+   * timeout). Errors are logged rather than thrown, so that they do not mask the exception that ended monitoring.
+   */
+  private void stopMove(Phase phase, AuthAdminDao controlDao, Future<Void> move, boolean isStopRequested) {
+    boolean isInterrupted = false;
+
+    logger.warning(() -> String.format("Stopping %s move after monitoring ended... [%s]", phase, this));
+    while (!move.isDone()) {
+      if (!isStopRequested) {
+        try {
+          controlDao.requestMoveStop();
+          isStopRequested = true;
+        }
+        catch (SQLException exception) {
+          logger.warning(() -> String.format("Move stop request failed: %s [%s]", exception.getMessage(), this));
+        }
+      }
+      try {
+        move.get(config.getPollInterval().toMillis(), TimeUnit.MILLISECONDS);
+      }
+      catch (InterruptedException exception) {
+        isInterrupted = true;
+      }
+      catch (ExecutionException | TimeoutException exception) {
+        // Move still running, or finished with an exception that is superseded by the one in flight.
+      }
+    }
+    if (isInterrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Wait until the window is open and foreground latency is on target.
+   * @return {@code true} when runnable; {@code false} if shut down first.
+   */
+  private boolean waitUntilRunnable(AuthSessionDao probeDao) throws InterruptedException {
+    boolean isWaiting = false;
+    while (!isShutdownRequested) {
+      if (isInWindow(getLocalTime()) && sampleLatency(probeDao).compareTo(config.getTargetLatency()) <= 0) {
+        return true;
+      }
+      if (!isWaiting) {
+        logger.fine(() -> String.format("Waiting for window and target latency... [%s]", this));
+        isWaiting = true;
+        progress = progress.withPaused(true);
+      }
+      Thread.sleep(config.getPollInterval().toMillis());
+    }
+    return false;
+  }
+
+  /**
+   * Return flag indicating whether or not a time falls within the configured window.
+   * @param time Local time.
+   * @return {@code true} if no window is configured or the time is within it; otherwise {@code false}.
+   */
+  boolean isInWindow(LocalTime time) {
+    LocalTime startTime = config.getWindowStartTime();
+    LocalTime endTime = config.getWindowEndTime();
+    if (startTime == null || endTime == null || startTime.equals(endTime)) {
+      return true;
+    }
+    if (startTime.isBefore(endTime)) {
+      return !time.isBefore(startTime) && time.isBefore(endTime);
+    }
+    return !time.isBefore(startTime) || time.isBefore(endTime);
+  }
+
+  /**
+   * Sample foreground latency, from the configured sampler or by timing a session lookup. A failed sample (including a
+   * runtime exception from the driver or sampler) returns {@link #FAILED_PROBE_LATENCY}, which is finite but above any
+   * sensible stop latency, so that moves are paused while the database is struggling.
+   * @return Latency.
+   */
+  private Duration sampleLatency(AuthSessionDao probeDao) {
+    try {
+      if (config.getLatencySampler() != null) {
+        return config.getLatencySampler().get();
+      }
+      long startNanos = System.nanoTime();
+      probeDao.getSession(PROBE_SESSION_ID);
+      return Duration.ofNanos(System.nanoTime() - startNanos);
+    }
+    catch (SQLException | RuntimeException exception) {
+      logger.warning(() -> String.format("Latency probe failed: %s [%s]", exception, this));
+      return FAILED_PROBE_LATENCY;
+    }
+  }
+
+  private static String describeLatency(Duration latency) {
+    return latency.equals(FAILED_PROBE_LATENCY) ? "probe failed" : latency.toMillis() + " ms";
+  }
+
+  /**
+   * Return an admin DAO for a connection. Package-private so that tests can substitute a stand-in.
+   */
+  AuthAdminDao newAdminDao(Connection connection) {
+    return new AuthAdminDao(connection, schemaName);
+  }
+
+  /**
+   * Return a session DAO for latency probes. Package-private so that tests can substitute a stand-in.
+   */
+  AuthSessionDao newSessionDao(Connection connection) {
+    return new AuthSessionDao(connection, schemaName);
+  }
+
+  /**
+   * Return the local time used for window checks. Package-private so that tests can control it.
+   */
+  LocalTime getLocalTime() {
+    return LocalTime.now();
+  }
+
+  private long getUnmovedCount(Phase phase, AuthAdminDao controlDao) throws SQLException {
+    return (phase == Phase.SESSIONS) ? controlDao.getUnmovedSessionsCount() : controlDao.getUnmovedAttributesCount();
+  }
+
+  private static short getOriginalCommitLimit(Phase phase, SwitchStatus switchStatus) {
+    Short savedCommitLimit = (phase == Phase.SESSIONS) ? switchStatus.getSavedSessionMoveCommitLimit()
+      : switchStatus.getSavedAttributeMoveCommitLimit();
+    if (savedCommitLimit != null) {
+      return savedCommitLimit;
+    }
+    return (phase == Phase.SESSIONS) ? switchStatus.getSessionMoveCommitLimit() : switchStatus.getAttributeMoveCommitLimit();
+  }
+
+  private static short getOriginalSleepSeconds(Phase phase, SwitchStatus switchStatus) {
+    Short savedSleepSeconds = (phase == Phase.SESSIONS) ? switchStatus.getSavedSessionMoveSleepSeconds()
+      : switchStatus.getSavedAttributeMoveSleepSeconds();
+    if (savedSleepSeconds != null) {
+      return savedSleepSeconds;
+    }
+    return (phase == Phase.SESSIONS) ? switchStatus.getSessionMoveSleepSeconds() : switchStatus.getAttributeMoveSleepSeconds();
+  }
+
+  private void changePacing(Phase phase, AuthAdminDao controlDao, short commitLimit, short sleepSeconds) throws SQLException {
+    logger.fine(() -> String.format("Changing %s pacing to %d rows per commit, %d seconds sleep... [%s]", phase, commitLimit,
+      sleepSeconds, this));
+    if (phase == Phase.SESSIONS) {
+      controlDao.changeMovePacing(commitLimit, sleepSeconds, null, null);
+    }
+    else {
+      controlDao.changeMovePacing(null, null, commitLimit, sleepSeconds);
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package com.easydataservices.open.auth.admin;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * SwitchProgress object, an immutable snapshot of {@link SwitchOrchestrator} progress.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+public class SwitchProgress {
+  /**
+   * Switch cycle phase.
+   */
+  public enum Phase {
+    /** Cycle not started. */
+    IDLE,
+    /** Session partition switch in progress. */
+    SESSIONS,
+    /** Attribute partition switch in progress. */
+    ATTRIBUTES,
+    /** Cycle complete. */
+    COMPLETE
+  }
+
+  private final Phase phase;
+  private final boolean isPaused;
+  private final long rowsAtStart;
+  private final long rowsRemaining;
+  private final Instant phaseStartTime;
+  private final Instant snapshotTime;
+
+  /**
+   * Constructor.
+   * @param phase Current phase.
+   * @param isPaused {@code true} if the move is paused; otherwise {@code false}.
+   * @param rowsAtStart Unmoved rows when the phase started (or resumed after a restart).
+   * @param rowsRemaining Unmoved rows now.
+   * @param phaseStartTime Time that the phase started.
+   */
+  protected SwitchProgress(Phase phase, boolean isPaused, long rowsAtStart, long rowsRemaining, Instant phaseStartTime) {
+    this.phase = phase;
+    this.isPaused = isPaused;
+    this.rowsAtStart = rowsAtStart;
+    this.rowsRemaining = rowsRemaining;
+    this.phaseStartTime = phaseStartTime;
+    this.snapshotTime = Instant.now();
+  }
+
+  /**
+   * Return the current phase.
+   * @return Phase.
+   */
+  public Phase getPhase() {
+    return phase;
+  }
+
+  /**
+   * Return flag indicating whether or not the move is paused, either for high latency or because the window is closed.
+   * @return {@code true} if paused; otherwise {@code false}.
+   */
+  public boolean isPaused() {
+    return isPaused;
+  }
+
+  /**
+   * Return the number of rows moved in the current phase. Includes rows moved by foreground access.
+   * @return Rows moved.
+   */
+  public long getRowsMoved() {
+    return Math.max(0, rowsAtStart - rowsRemaining);
+  }
+
+  /**
+   * Return the number of rows remaining to be moved in the current phase.
+   * @return Rows remaining.
+   */
+  public long getRowsRemaining() {
+    return rowsRemaining;
+  }
+
+  /**
+   * Return the time that the current phase started.
+   * @return Phase start time; {@code null} if no phase is running.
+   */
+  public Instant getPhaseStartTime() {
+    return phaseStartTime;
+  }
+
+  /**
+   * Return the estimated time to complete the current phase, based on the average move rate since the phase started.
+   * @return Estimated remaining duration; {@code null} if no estimate is available yet.
+   */
+  public Duration getEta() {
+    long rowsMoved = getRowsMoved();
+    if (phaseStartTime == null || rowsMoved == 0) {
+      return null;
+    }
+    long elapsedMillis = Duration.between(phaseStartTime, snapshotTime).toMillis();
+    return Duration.ofMillis((long) ((double) elapsedMillis * rowsRemaining / rowsMoved));
+  }
+
+  /**
+   * Return a copy of this snapshot with a different paused flag.
+   * @param isPaused {@code true} if the move is paused; otherwise {@code false}.
+   * @return Progress snapshot.
+   */
+  SwitchProgress withPaused(boolean isPaused) {
+    return new SwitchProgress(phase, isPaused, rowsAtStart, rowsRemaining, phaseStartTime);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s phase=%s paused=%s moved=%d remaining=%d eta=%s", super.toString(), phase, isPaused,
+      getRowsMoved(), rowsRemaining, getEta());
+  }
+}
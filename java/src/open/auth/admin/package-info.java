@@ -0,0 +1,6 @@
+/**
+ * Provides unattended orchestration of AUTH Service housekeeping, such as session and attribute partition switching.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+package com.easydataservices.open.auth.admin;
@@ -0,0 +1,339 @@
+package com.easydataservices.open.auth.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * One independently locked segment of an {@link OffHeapAttributeCache}.
+ * <p>
+ * Attribute bytes are held in fixed-size blocks carved from direct {@link ByteBuffer} slabs, which are allocated on demand
+ * up to the segment limit. An attribute occupies as many blocks as it needs; only the block list is held on the heap.
+ * Sessions are cached and evicted whole, using the CLOCK algorithm, so a cached session always has all of its attributes.
+ * Readers share a read lock and copy bytes out with absolute reads; writers take the write lock.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+class AttributeCacheSegment {
+  private final int blockBytes;
+  private final int blocksPerSlab;
+  private final int slabBytes;
+  private final int maxSlabs;
+  private final LongAdder evictionCount;
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  private final List<ByteBuffer> slabs = new ArrayList<ByteBuffer>();
+  private int[] freeBlocks = new int[0];
+  private int freeBlockCount;
+  private long usedBytes;
+  private final Map<String, SessionEntry> sessions = new HashMap<String, SessionEntry>();
+  private final List<SessionEntry> clock = new ArrayList<SessionEntry>();
+  private int clockHand;
+
+  /**
+   * Cached attribute: the blocks holding its bytes, in order.
+   */
+  private static class AttributeEntry {
+    private final int[] blocks;
+    private final int length;
+
+    private AttributeEntry(int[] blocks, int length) {
+      this.blocks = blocks;
+      this.length = length;
+    }
+  }
+
+  /**
+   * Cached session: its attributes, current to an attribute generation.
+   */
+  private static class SessionEntry {
+    private final String sessionId;
+    private final Map<String, AttributeEntry> attributes = new HashMap<String, AttributeEntry>();
+    private int generationId;
+    private int clockIndex;
+    private volatile boolean isReferenced;
+
+    private SessionEntry(String sessionId) {
+      this.sessionId = sessionId;
+    }
+  }
+
+  /**
+   * Constructor.
+   * @param maxSlabs Maximum number of slabs.
+   * @param slabBytes Slab size in bytes.
+   * @param blockBytes Block size in bytes.
+   * @param evictionCount Counter for evicted sessions.
+   */
+  AttributeCacheSegment(int maxSlabs, int slabBytes, int blockBytes, LongAdder evictionCount) {
+    this.maxSlabs = maxSlabs;
+    this.slabBytes = slabBytes;
+    this.blockBytes = blockBytes;
+    this.blocksPerSlab = slabBytes / blockBytes;
+    this.evictionCount = evictionCount;
+  }
+
+  int getGenerationId(String sessionId) {
+    lock.readLock().lock();
+    try {
+      SessionEntry entry = sessions.get(sessionId);
+      return (entry == null) ? -1 : entry.generationId;
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  Set<String> getAttributeNames(String sessionId, int generationId) {
+    lock.readLock().lock();
+    try {
+      SessionEntry entry = getCurrentEntry(sessionId, generationId);
+      return (entry == null) ? null : new LinkedHashSet<String>(entry.attributes.keySet());
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Copy attribute bytes to the heap.
+   * @return Attribute bytes; {@code null} if the session is not cached at the generation, or has no such attribute.
+   */
+  byte[] getBytes(String sessionId, String attributeName, int generationId) {
+    lock.readLock().lock();
+    try {
+      SessionEntry entry = getCurrentEntry(sessionId, generationId);
+      if (entry == null) {
+        return null;
+      }
+      AttributeEntry attribute = entry.attributes.get(attributeName);
+      if (attribute == null) {
+        return null;
+      }
+      byte[] bytes = new byte[attribute.length];
+      int position = 0;
+      for (int block : attribute.blocks) {
+        int length = Math.min(blockBytes, attribute.length - position);
+        slabs.get(block / blocksPerSlab).get((block % blocksPerSlab) * blockBytes, bytes, position, length);
+        position = position + length;
+      }
+      return bytes;
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Apply attribute changes to a cached session. See {@link OffHeapAttributeCache#putAttributes}.
+   */
+  boolean putAttributes(String sessionId, int sinceGenerationId, int generationId, Map<String, byte[]> attributes) {
+    lock.writeLock().lock();
+    try {
+      // An update no newer than the cached session is stale, e.g. from a concurrent refresh that finished first: drop it,
+      // keeping the cached session.
+      SessionEntry entry = sessions.get(sessionId);
+      if (entry != null && entry.generationId >= generationId) {
+        return entry.generationId == generationId;
+      }
+      if (sinceGenerationId == 0) {
+        if (entry != null) {
+          removeEntry(entry);
+        }
+        entry = null;
+      }
+      else if (entry == null || entry.generationId != sinceGenerationId) {
+        if (entry != null) {
+          removeEntry(entry);
+        }
+        return false;
+      }
+      if (entry == null) {
+        entry = new SessionEntry(sessionId);
+        entry.clockIndex = clock.size();
+        sessions.put(sessionId, entry);
+        clock.add(entry);
+      }
+
+      for (Map.Entry<String, byte[]> attribute : attributes.entrySet()) {
+        AttributeEntry oldAttribute = entry.attributes.remove(attribute.getKey());
+        if (oldAttribute != null) {
+          freeAttribute(oldAttribute);
+        }
+        byte[] bytes = attribute.getValue();
+        if (bytes != null) {
+          int[] blocks = allocateBlocks((bytes.length + blockBytes - 1) / blockBytes, entry);
+          if (blocks == null) {
+            removeEntry(entry);
+            return false;
+          }
+          int position = 0;
+          for (int block : blocks) {
+            int length = Math.min(blockBytes, bytes.length - position);
+            slabs.get(block / blocksPerSlab).put((block % blocksPerSlab) * blockBytes, bytes, position, length);
+            position = position + length;
+          }
+          entry.attributes.put(attribute.getKey(), new AttributeEntry(blocks, bytes.length));
+          usedBytes = usedBytes + bytes.length;
+        }
+      }
+      entry.generationId = generationId;
+      entry.isReferenced = true;
+      return true;
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  void removeSession(String sessionId) {
+    lock.writeLock().lock();
+    try {
+      SessionEntry entry = sessions.get(sessionId);
+      if (entry != null) {
+        removeEntry(entry);
+      }
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  int getSessionCount() {
+    lock.readLock().lock();
+    try {
+      return sessions.size();
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  long getUsedBytes() {
+    lock.readLock().lock();
+    try {
+      return usedBytes;
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  long getAllocatedBytes() {
+    lock.readLock().lock();
+    try {
+      return (long) slabs.size() * slabBytes;
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Return the cached session if it is current to the generation, marking it referenced. Caller must hold a lock.
+   */
+  private SessionEntry getCurrentEntry(String sessionId, int generationId) {
+    SessionEntry entry = sessions.get(sessionId);
+    if (entry == null || entry.generationId != generationId) {
+      return null;
+    }
+    entry.isReferenced = true;
+    return entry;
+  }
+
+  /**
+   * Allocate blocks, adding slabs up to the limit and then evicting other sessions. Caller must hold the write lock.
+   * @return Block numbers; {@code null} if the blocks cannot be allocated without evicting the protected session.
+   */
+  private int[] allocateBlocks(int count, SessionEntry protectedEntry) {
+    if (count > maxSlabs * blocksPerSlab) {
+      return null;
+    }
+    while (freeBlockCount < count) {
+      if (slabs.size() < maxSlabs) {
+        addSlab();
+      }
+      else if (!evictOne(protectedEntry)) {
+        return null;
+      }
+    }
+    int[] blocks = new int[count];
+    for (int i = 0; i < count; i++) {
+      freeBlockCount = freeBlockCount - 1;
+      blocks[i] = freeBlocks[freeBlockCount];
+    }
+    return blocks;
+  }
+
+  private void addSlab() {
+    int firstBlock = slabs.size() * blocksPerSlab;
+    slabs.add(ByteBuffer.allocateDirect(slabBytes));
+    if (freeBlocks.length < slabs.size() * blocksPerSlab) {
+      int[] newFreeBlocks = new int[slabs.size() * blocksPerSlab];
+      System.arraycopy(freeBlocks, 0, newFreeBlocks, 0, freeBlockCount);
+      freeBlocks = newFreeBlocks;
+    }
+    for (int block = firstBlock + blocksPerSlab - 1; block >= firstBlock; block--) {
+      freeBlocks[freeBlockCount] = block;
+      freeBlockCount = freeBlockCount + 1;
+    }
+  }
+
+  /**
+   * Evict one session using the CLOCK algorithm: referenced sessions get a second chance. Caller must hold the write lock.
+   * @return {@code true} if a session was evicted; {@code false} if there is nothing to evict.
+   */
+  private boolean evictOne(SessionEntry protectedEntry) {
+    for (int i = 0; i < 2 * clock.size() + 1; i++) {
+      if (clock.isEmpty()) {
+        return false;
+      }
+      if (clockHand >= clock.size()) {
+        clockHand = 0;
+      }
+      SessionEntry entry = clock.get(clockHand);
+      if (entry == protectedEntry) {
+        clockHand = clockHand + 1;
+      }
+      else if (entry.isReferenced) {
+        entry.isReferenced = false;
+        clockHand = clockHand + 1;
+      }
+      else {
+        removeEntry(entry);
+        evictionCount.increment();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Remove a session, freeing its blocks. Caller must hold the write lock.
+   */
+  private void removeEntry(SessionEntry entry) {
+    for (AttributeEntry attribute : entry.attributes.values()) {
+      freeAttribute(attribute);
+    }
+    entry.attributes.clear();
+    sessions.remove(entry.sessionId);
+    SessionEntry lastEntry = clock.remove(clock.size() - 1);
+    if (lastEntry != entry) {
+      lastEntry.clockIndex = entry.clockIndex;
+      clock.set(entry.clockIndex, lastEntry);
+    }
+  }
+
+  private void freeAttribute(AttributeEntry attribute) {
+    for (int block : attribute.blocks) {
+      freeBlocks[freeBlockCount] = block;
+      freeBlockCount = freeBlockCount + 1;
+    }
+    usedBytes = usedBytes - attribute.length;
+  }
+}
@@ -0,0 +1,274 @@
+package com.easydataservices.open.auth.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import com.easydataservices.open.auth.AuthAttributesDao;
+import com.easydataservices.open.auth.util.Mask;
+
+/**
+ * Off-heap cache of serialized session attributes, holding attribute bytes exactly as
+ * {@link AuthAttributesDao#getSerializedAttributes} returns them. Keeping the bytes in direct memory, rather than as
+ * deserialized objects on the heap, allows far more sessions to be cached without lengthening garbage collections. Objects
+ * are deserialized on demand into the caller's heap.
+ * <p>
+ * Each cached session is tagged with the session attribute generation ({@link
+ * com.easydataservices.open.auth.StoreSession#getAttributeGenerationId}) that its attributes are current to, and lookups
+ * only succeed for the current generation. {@link #refresh} brings a session up to date with a delta load, removing
+ * attributes that have since been deleted.
+ * <p>
+ * Memory is capped at a fixed size, split across independently locked segments. Sessions are evicted whole (CLOCK
+ * algorithm) when a segment is full. All methods are safe for concurrent use.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+public class OffHeapAttributeCache {
+  private static final String className = OffHeapAttributeCache.class.getName();
+  private static final Logger logger = Logger.getLogger(className);
+  private static final int DEFAULT_SEGMENTS = 16;
+  private static final int DEFAULT_SLAB_BYTES = 1024 * 1024;
+  private static final int DEFAULT_BLOCK_BYTES = 256;
+  private final AttributeCacheSegment[] segments;
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+  private final LongAdder evictionCount = new LongAdder();
+
+  /**
+   * Constructor, using 16 segments, 1 MiB slabs and 256 byte blocks.
+   * @param maxBytes Maximum direct memory to use, in bytes.
+   */
+  public OffHeapAttributeCache(long maxBytes) {
+    this(maxBytes, DEFAULT_SEGMENTS, DEFAULT_SLAB_BYTES, DEFAULT_BLOCK_BYTES);
+  }
+
+  /**
+   * Constructor.
+   * @param maxBytes Maximum direct memory to use, in bytes. Divided equally between segments, in whole slabs.
+   * @param segmentCount Number of independently locked segments.
+   * @param slabBytes Slab size in bytes. Direct memory is allocated a slab at a time.
+   * @param blockBytes Block size in bytes; must divide the slab size. Each attribute uses a whole number of blocks.
+   */
+  public OffHeapAttributeCache(long maxBytes, int segmentCount, int slabBytes, int blockBytes) {
+    logger.finer(() -> String.format("ENTRY %s %d %d %d %d", this, maxBytes, segmentCount, slabBytes, blockBytes));
+    if (segmentCount < 1 || blockBytes < 1 || slabBytes < blockBytes || slabBytes % blockBytes != 0) {
+      throw new IllegalArgumentException("Invalid segment, slab or block size!");
+    }
+    long maxSlabsPerSegment = maxBytes / segmentCount / slabBytes;
+    if (maxSlabsPerSegment < 1 || maxSlabsPerSegment * (slabBytes / blockBytes) > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Maximum size must allow between 1 slab and 2^31 blocks per segment!");
+    }
+    segments = new AttributeCacheSegment[segmentCount];
+    for (int i = 0; i < segmentCount; i++) {
+      segments[i] = new AttributeCacheSegment((int) maxSlabsPerSegment, slabBytes, blockBytes, evictionCount);
+    }
+    logger.finer(() -> String.format("RETURN %s", this));
+  }
+
+  /**
+   * Return the attribute generation that a cached session is current to.
+   * @param sessionId Session identifier.
+   * @return Attribute generation id; -1 if the session is not cached.
+   */
+  public int getGenerationId(String sessionId) {
+    return getSegment(sessionId).getGenerationId(sessionId);
+  }
+
+  /**
+   * Return the attribute names of a cached session.
+   * @param sessionId Session identifier.
+   * @param generationId Current attribute generation of the session.
+   * @return Attribute names; {@code null} if the session is not cached at the specified generation.
+   */
+  public Set<String> getAttributeNames(String sessionId, int generationId) {
+    Set<String> attributeNames = getSegment(sessionId).getAttributeNames(sessionId, generationId);
+    countLookup(attributeNames != null);
+    return attributeNames;
+  }
+
+  /**
+   * Return a copy of the serialized bytes of a cached attribute.
+   * @param sessionId Session identifier.
+   * @param attributeName Attribute name.
+   * @param generationId Current attribute generation of the session.
+   * @return Serialized attribute; {@code null} if the session is not cached at the specified generation, or if the session
+   * has no such attribute.
+   */
+  public byte[] getBytes(String sessionId, String attributeName, int generationId) {
+    byte[] bytes = getSegment(sessionId).getBytes(sessionId, attributeName, generationId);
+    countLookup(bytes != null);
+    return bytes;
+  }
+
+  /**
+   * Return a cached attribute, deserialized into a new object.
+   * @param sessionId Session identifier.
+   * @param attributeName Attribute name.
+   * @param generationId Current attribute generation of the session.
+   * @return Attribute object; {@code null} if the session is not cached at the specified generation, or if the session has
+   * no such attribute.
+   */
+  public Object getObject(String sessionId, String attributeName, int generationId)
+    throws IOException, ClassNotFoundException {
+    byte[] bytes = getBytes(sessionId, attributeName, generationId);
+    if (bytes == null) {
+      return null;
+    }
+    try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+      return objectInputStream.readObject();
+    }
+  }
+
+  /**
+   * Apply serialized attributes to the cache. Attributes are only applied if {@code generationId} is newer than the cached
+   * session; otherwise they are stale (e.g. from a concurrent refresh that finished later) and are ignored, leaving the cached
+   * session in place. With {@code sinceGenerationId} 0 the attributes are a full load, and replace any older cached copy of
+   * the session; otherwise they are a delta, and are applied only if the session is cached at exactly
+   * {@code sinceGenerationId}. If a delta cannot be applied, or the session does not fit, the older session is removed.
+   * @param sessionId Session identifier.
+   * @param sinceGenerationId Generation the attributes were loaded since, as passed to
+   * {@link AuthAttributesDao#getSerializedAttributes}.
+   * @param generationId Attribute generation the session is current to after applying the attributes.
+   * @param attributes Map of attribute names to serialized objects. A {@code null} value removes the attribute.
+   * @return {@code true} if the session is now cached at {@code generationId}; otherwise {@code false}.
+   */
+  public boolean putAttributes(String sessionId, int sinceGenerationId, int generationId, Map<String, byte[]> attributes) {
+    return getSegment(sessionId).putAttributes(sessionId, sinceGenerationId, generationId, attributes);
+  }
+
+  /**
+   * Bring a cached session up to date, loading only attributes changed since the cached generation (or all attributes if
+   * the session is not cached). A delta load does not return deleted attributes, so it is followed by a load of the current
+   * attribute names, and cached attributes no longer named are removed. Does nothing if the session is already current, or
+   * is cached at a newer generation.
+   * @param sessionId Session identifier.
+   * @param generationId Current attribute generation of the session, e.g. from
+   * {@link com.easydataservices.open.auth.AuthSessionDao#getSession}.
+   * @param attributesDao DAO used to load attributes.
+   * @return {@code true} if the session is now cached at {@code generationId}; otherwise {@code false}.
+   */
+  public boolean refresh(String sessionId, int generationId, AuthAttributesDao attributesDao) throws SQLException {
+    final String maskedSessionId = Mask.last(sessionId, 4);
+
+    int cachedGenerationId = getGenerationId(sessionId);
+    if (cachedGenerationId == generationId) {
+      return true;
+    }
+    // The cached session is newer (refreshed by another thread since the caller read the generation), so nothing loaded
+    // here could be applied.
+    if (cachedGenerationId > generationId) {
+      return false;
+    }
+    int sinceGenerationId = (cachedGenerationId > 0 && cachedGenerationId < generationId) ? cachedGenerationId : 0;
+    logger.fine(() -> String.format("Loading attributes since generation %d... [%s %s]", sinceGenerationId, this,
+      maskedSessionId));
+    Map<String, byte[]> attributes = attributesDao.getSerializedAttributes(sessionId, sinceGenerationId);
+    if (sinceGenerationId > 0) {
+      Set<String> attributeNames = attributesDao.getAttributeNames(sessionId);
+      Set<String> deletedAttributeNames = new HashSet<String>(attributes.keySet());
+      Set<String> cachedAttributeNames = getSegment(sessionId).getAttributeNames(sessionId, sinceGenerationId);
+      if (cachedAttributeNames != null) {
+        deletedAttributeNames.addAll(cachedAttributeNames);
+      }
+      deletedAttributeNames.removeAll(attributeNames);
+      if (!deletedAttributeNames.isEmpty()) {
+        logger.fine(() -> String.format("Removing %d deleted attributes... [%s %s]", deletedAttributeNames.size(), this,
+          maskedSessionId));
+        attributes = new LinkedHashMap<String, byte[]>(attributes);
+        for (String attributeName : deletedAttributeNames) {
+          attributes.put(attributeName, null);
+        }
+      }
+    }
+    return putAttributes(sessionId, sinceGenerationId, generationId, attributes);
+  }
+
+  /**
+   * Remove a session from the cache.
+   * @param sessionId Session identifier.
+   */
+  public void removeSession(String sessionId) {
+    getSegment(sessionId).removeSession(sessionId);
+  }
+
+  /**
+   * Return the number of cached sessions.
+   * @return Session count.
+   */
+  public long getSessionCount() {
+    long sessionCount = 0;
+    for (AttributeCacheSegment segment : segments) {
+      sessionCount = sessionCount + segment.getSessionCount();
+    }
+    return sessionCount;
+  }
+
+  /**
+   * Return the number of attribute bytes held.
+   * @return Used bytes.
+   */
+  public long getUsedBytes() {
+    long usedBytes = 0;
+    for (AttributeCacheSegment segment : segments) {
+      usedBytes = usedBytes + segment.getUsedBytes();
+    }
+    return usedBytes;
+  }
+
+  /**
+   * Return the amount of direct memory allocated to slabs.
+   * @return Allocated bytes.
+   */
+  public long getAllocatedBytes() {
+    long allocatedBytes = 0;
+    for (AttributeCacheSegment segment : segments) {
+      allocatedBytes = allocatedBytes + segment.getAllocatedBytes();
+    }
+    return allocatedBytes;
+  }
+
+  /**
+   * Return the number of lookups that found a current session.
+   * @return Hit count.
+   */
+  public long getHitCount() {
+    return hitCount.sum();
+  }
+
+  /**
+   * Return the number of lookups that did not find a current session or attribute.
+   * @return Miss count.
+   */
+  public long getMissCount() {
+    return missCount.sum();
+  }
+
+  /**
+   * Return the number of sessions evicted to make room for others.
+   * @return Eviction count.
+   */
+  public long getEvictionCount() {
+    return evictionCount.sum();
+  }
+
+  private AttributeCacheSegment getSegment(String sessionId) {
+    int hash = sessionId.hashCode();
+    hash = hash ^ (hash >>> 16);
+    return segments[Math.floorMod(hash, segments.length)];
+  }
+
+  private void countLookup(boolean isHit) {
+    if (isHit) {
+      hitCount.increment();
+    }
+    else {
+      missCount.increment();
+    }
+  }
+}
@@ -0,0 +1,6 @@
+/**
+ * Provides client-side caching of session attributes, held off the Java heap.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+package com.easydataservices.open.auth.cache;
@@ -0,0 +1,20 @@
+package com.easydataservices.open.auth.policy;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A single attempt at a database operation, executed by a {@link CallPolicy}.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+@FunctionalInterface
+public interface AuthCall<T> {
+  /**
+   * Perform the operation.
+   * @param connection Connection for this attempt.
+   * @param queryTimeoutSeconds Query timeout for this attempt, to be passed to the DAO {@code setQueryTimeout} method.
+   * @return Operation result.
+   */
+  T call(Connection connection, int queryTimeoutSeconds) throws SQLException;
+}
@@ -0,0 +1,219 @@
+package com.easydataservices.open.auth.policy;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+import com.easydataservices.open.auth.util.SqlStates;
+
+/**
+ * Executes DAO calls with a deadline, per-attempt query timeouts, bounded retries and an optional circuit breaker.
+ * <p>
+ * Each attempt uses a fresh connection from the {@link ConnectionSource}, and a query timeout no longer than the time left
+ * before the deadline. JDBC query timeouts are in whole seconds, so a retry is only made while at least one whole second
+ * remains, the wait for a connection is limited to the time left less that second (see
+ * {@link ConnectionSource#getConnection(Duration)}), and the query timeout is rounded down. The first attempt is always
+ * made, with a query timeout of at least one second, so that the smallest deadline allowed (1 second) is usable. Failures
+ * are classified with {@link SqlStates#classify}; only retryable transient failures are retried (see
+ * {@link SqlStates#isRetryable}), after a jittered exponential backoff. Everything else fails fast with the classified
+ * exception. For example:
+ * <pre>
+ * StoreSession session = callPolicy.execute("getSession", true, (connection, queryTimeoutSeconds) -&gt; {
+ *   AuthSessionDao sessionDao = new AuthSessionDao(connection, schemaName);
+ *   sessionDao.setQueryTimeout(queryTimeoutSeconds);
+ *   return sessionDao.getSession(sessionId);
+ * });
+ * </pre>
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+public class CallPolicy {
+  private static final String className = CallPolicy.class.getName();
+  private static final Logger logger = Logger.getLogger(className);
+  private static final long NANOS_PER_SECOND = 1000000000L;
+  private ConnectionSource connectionSource;
+  private Duration deadline = Duration.ofSeconds(2);
+  private Duration attemptTimeout = Duration.ofSeconds(1);
+  private int maxAttempts = 3;
+  private Duration baseBackoff = Duration.ofMillis(20);
+  private Duration maxBackoff = Duration.ofMillis(500);
+  private CircuitBreaker circuitBreaker;
+
+  /**
+   * Constructor.
+   * @param connectionSource Source of connections, e.g. {@code dataSource::getConnection}.
+   */
+  public CallPolicy(ConnectionSource connectionSource) {
+    logger.finer(() -> String.format("ENTRY %s %s", this, connectionSource));
+    this.connectionSource = connectionSource;
+    logger.finer(() -> String.format("RETURN %s", this));
+  }
+
+  /**
+   * Set the overall time allowed for an operation, including retries. At least 1 second. Default 2 seconds.
+   * @param deadline Deadline.
+   */
+  public void setDeadline(Duration deadline) {
+    if (deadline.getSeconds() < 1) {
+      throw new IllegalArgumentException("Deadline must be at least 1 second!");
+    }
+    this.deadline = deadline;
+  }
+
+  /**
+   * Set the maximum query timeout for a single attempt. Rounded down to whole seconds, and at least 1 second. Default 1
+   * second.
+   * @param attemptTimeout Attempt timeout.
+   */
+  public void setAttemptTimeout(Duration attemptTimeout) {
+    if (attemptTimeout.getSeconds() < 1) {
+      throw new IllegalArgumentException("Attempt timeout must be at least 1 second!");
+    }
+    this.attemptTimeout = attemptTimeout;
+  }
+
+  /**
+   * Set the maximum number of attempts, including the first. Default 3.
+   * @param maxAttempts Maximum attempts.
+   */
+  public void setMaxAttempts(int maxAttempts) {
+    if (maxAttempts < 1) {
+      throw new IllegalArgumentException("At least one attempt is required!");
+    }
+    this.maxAttempts = maxAttempts;
+  }
+
+  /**
+   * Set the backoff range. Before retry {@code n} the policy sleeps for a random time between 0 and
+   * {@code min(maxBackoff, baseBackoff * 2^(n-1))}. Default 20 to 500 milliseconds.
+   * @param baseBackoff Base backoff.
+   * @param maxBackoff Maximum backoff.
+   */
+  public void setBackoff(Duration baseBackoff, Duration maxBackoff) {
+    this.baseBackoff = baseBackoff;
+    this.maxBackoff = maxBackoff;
+  }
+
+  /**
+   * Set the circuit breaker shared by calls through this policy. Default none.
+   * @param circuitBreaker Circuit breaker; {@code null} for none.
+   */
+  public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+    this.circuitBreaker = circuitBreaker;
+  }
+
+  /**
+   * Execute an operation under this policy.
+   * @param operationName Operation name, for logging.
+   * @param isIdempotent {@code true} if repeating the operation has the same effect as performing it once. Failures with
+   * an unknown outcome (e.g. connection reset) are only retried for idempotent operations.
+   * @param call Operation.
+   * @return Operation result.
+   * @throws CircuitOpenException if the circuit breaker is open.
+   * @throws SQLTimeoutException with SQLSTATE 72009 if less than one second remains before the deadline when a retry is
+   * due, or once a connection has been acquired for it.
+   * @throws SQLException classified by {@link SqlStates#classify} if the operation fails.
+   */
+  public <T> T execute(String operationName, boolean isIdempotent, AuthCall<T> call) throws SQLException {
+    final long deadlineNanos = nanoTime() + deadline.toNanos();
+
+    logger.finer(() -> String.format("ENTRY %s %s", this, operationName));
+    for (int attempt = 1; ; attempt++) {
+      long remainingNanos = deadlineNanos - nanoTime();
+      if (attempt > 1 && remainingNanos < NANOS_PER_SECOND) {
+        throw new SQLTimeoutException("Deadline exceeded for " + operationName, "72009");
+      }
+      CircuitBreaker.Permit permit = null;
+      if (circuitBreaker != null) {
+        permit = circuitBreaker.tryAcquire();
+        if (permit == null) {
+          logger.fine(() -> String.format("Call rejected, circuit open... [%s %s]", this, operationName));
+          throw new CircuitOpenException("Circuit open; call rejected for " + operationName);
+        }
+      }
+
+      SQLException classifiedException;
+      boolean isRecorded = false;
+      Duration maxWait = Duration.ofNanos(Math.max(0, remainingNanos - NANOS_PER_SECOND));
+      try (Connection connection = connectionSource.getConnection(maxWait)) {
+        // Time spent waiting for the connection counts against the deadline. Running out here suggests a saturated pool or
+        // database, so is recorded as a transient failure. If no wait was allowed (a first attempt with a second or less
+        // left), only the time taken to get here has passed, and the attempt gets the minimum 1 second timeout instead.
+        long queryTimeoutNanos = Math.min(deadlineNanos - nanoTime(), attemptTimeout.toNanos());
+        if (queryTimeoutNanos < NANOS_PER_SECOND) {
+          if (!maxWait.isZero()) {
+            throw new SQLTimeoutException("Deadline exceeded acquiring connection for " + operationName, "72009");
+          }
+          queryTimeoutNanos = NANOS_PER_SECOND;
+        }
+        T result = call.call(connection, (int) (queryTimeoutNanos / NANOS_PER_SECOND));
+        if (circuitBreaker != null) {
+          circuitBreaker.recordSuccess(permit);
+        }
+        isRecorded = true;
+        logger.finer(() -> String.format("RETURN %s %s", this, operationName));
+        return result;
+      }
+      catch (SQLException exception) {
+        classifiedException = SqlStates.classify(exception);
+        if (circuitBreaker != null) {
+          if (SqlStates.isTransient(classifiedException)) {
+            circuitBreaker.recordFailure(permit);
+          }
+          else {
+            circuitBreaker.recordSuccess(permit);
+          }
+        }
+        isRecorded = true;
+      }
+      finally {
+        // Any other exception or error says nothing about the database, but the permit must still be given back, so that a
+        // half-open breaker is not left waiting for a probe that will never report.
+        if (!isRecorded && circuitBreaker != null) {
+          circuitBreaker.release(permit);
+        }
+      }
+
+      // Fail fast unless the failure is retryable, attempts remain, and the backoff leaves time for another attempt.
+      final SQLException returnException = classifiedException;
+      final int failedAttempt = attempt;
+      if (!SqlStates.isRetryable(classifiedException, isIdempotent) || attempt >= maxAttempts) {
+        logger.fine(() -> String.format("RETURN %s %s %d %s %s", this, operationName, failedAttempt,
+          returnException.getSQLState(), returnException.getMessage()));
+        throw classifiedException;
+      }
+      long backoffCapNanos = Math.min(maxBackoff.toNanos(), baseBackoff.toNanos() << Math.min(attempt - 1, 30));
+      long backoffNanos = ThreadLocalRandom.current().nextLong(backoffCapNanos + 1);
+      if (nanoTime() + backoffNanos > deadlineNanos - NANOS_PER_SECOND) {
+        logger.fine(() -> String.format("RETURN %s %s %d %s %s", this, operationName, failedAttempt,
+          returnException.getSQLState(), returnException.getMessage()));
+        throw classifiedException;
+      }
+      logger.fine(() -> String.format("Retrying after %s (attempt %d)... [%s %s]", returnException.getSQLState(),
+        failedAttempt, this, operationName));
+      try {
+        sleep(backoffNanos);
+      }
+      catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+        throw classifiedException;
+      }
+    }
+  }
+
+  /**
+   * Return the current time in nanoseconds, as {@link System#nanoTime}. Package-private so that tests can control it.
+   */
+  long nanoTime() {
+    return System.nanoTime();
+  }
+
+  /**
+   * Sleep before a retry. Package-private so that tests can control time.
+   */
+  void sleep(long nanos) throws InterruptedException {
+    Thread.sleep(nanos / 1000000L, (int) (nanos % 1000000L));
+  }
+}
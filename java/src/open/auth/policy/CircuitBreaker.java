@@ -0,0 +1,213 @@
+package com.easydataservices.open.auth.policy;
+
+import java.time.Duration;
+import java.util.logging.Logger;
+
+/**
+ * Count-based circuit breaker. Records the outcome of recent calls in a sliding window; when the proportion of transient
+ * database failures reaches the threshold the breaker opens, and calls are rejected without reaching the database. After
+ * the open duration a single probe call is allowed: success closes the breaker, failure reopens it.
+ * <p>
+ * Each permitted call holds a {@link Permit}, which it hands back with its outcome. Only the probe's permit can close or
+ * reopen a half-open breaker. Outcomes of calls admitted before the breaker last opened are ignored, so that a slow call
+ * finishing late cannot close the breaker, reopen it, or free the probe slot.
+ * <p>
+ * Errors in the request itself (e.g. session does not exist) count as successes, since the database handled the call.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+public class CircuitBreaker {
+  private static final String className = CircuitBreaker.class.getName();
+  private static final Logger logger = Logger.getLogger(className);
+
+  /**
+   * Breaker state.
+   */
+  public enum State {
+    /** Calls are allowed and outcomes recorded. */
+    CLOSED,
+    /** Calls are rejected. */
+    OPEN,
+    /** A single probe call is allowed. */
+    HALF_OPEN
+  }
+
+  /**
+   * Permission for one call, returned by {@link #tryAcquire}.
+   */
+  public static final class Permit {
+    private final boolean isProbe;
+    private final long openCount;
+
+    private Permit(boolean isProbe, long openCount) {
+      this.isProbe = isProbe;
+      this.openCount = openCount;
+    }
+
+    /**
+     * Return flag indicating whether or not this permit is for the half-open probe call.
+     * @return {@code true} if this is the probe permit; otherwise {@code false}.
+     */
+    public boolean isProbe() {
+      return isProbe;
+    }
+  }
+
+  private final boolean[] window;
+  private final int minimumCalls;
+  private final double failureRateThreshold;
+  private final long openNanos;
+  private State state = State.CLOSED;
+  private int windowIndex;
+  private int callCount;
+  private int failureCount;
+  private long openUntilNanos;
+  private long openCount;
+  private Permit probePermit;
+
+  /**
+   * Constructor.
+   * @param windowSize Number of most recent calls considered.
+   * @param minimumCalls Minimum number of recorded calls before the breaker can open.
+   * @param failureRateThreshold Proportion of failed calls (0 to 1) at which the breaker opens.
+   * @param openDuration Time to reject calls for before allowing a probe.
+   */
+  public CircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold, Duration openDuration) {
+    if (windowSize < 1 || minimumCalls < 1) {
+      throw new IllegalArgumentException("Window size and minimum calls must be at least 1!");
+    }
+    if (!(failureRateThreshold > 0 && failureRateThreshold <= 1)) {
+      throw new IllegalArgumentException("Failure rate threshold must be greater than 0 and at most 1!");
+    }
+    if (openDuration.isNegative()) {
+      throw new IllegalArgumentException("Open duration cannot be negative!");
+    }
+    this.window = new boolean[windowSize];
+    this.minimumCalls = Math.min(minimumCalls, windowSize);
+    this.failureRateThreshold = failureRateThreshold;
+    this.openNanos = openDuration.toNanos();
+  }
+
+  /**
+   * Return the current state.
+   * @return State.
+   */
+  public synchronized State getState() {
+    return state;
+  }
+
+  /**
+   * Request permission for a call. Every permit must be handed back exactly once, to {@link #recordSuccess},
+   * {@link #recordFailure} or {@link #release}.
+   * @return Permit; {@code null} if the call must be rejected.
+   */
+  public synchronized Permit tryAcquire() {
+    switch (state) {
+      case CLOSED:
+        return new Permit(false, openCount);
+      case OPEN:
+        if (nanoTime() - openUntilNanos < 0) {
+          return null;
+        }
+        state = State.HALF_OPEN;
+        logger.info(() -> String.format("Circuit half open [%s]", this));
+        probePermit = new Permit(true, openCount);
+        return probePermit;
+      default:
+        if (probePermit != null) {
+          return null;
+        }
+        probePermit = new Permit(true, openCount);
+        return probePermit;
+    }
+  }
+
+  /**
+   * Record a call that the database handled. A probe success closes the breaker.
+   * @param permit Permit for the call.
+   */
+  public synchronized void recordSuccess(Permit permit) {
+    if (isCurrentProbe(permit)) {
+      logger.info(() -> String.format("Circuit closed [%s]", this));
+      state = State.CLOSED;
+      probePermit = null;
+      resetWindow();
+    }
+    else if (isCurrentClosed(permit)) {
+      record(false);
+    }
+  }
+
+  /**
+   * Record a call that failed with a transient database condition. A probe failure reopens the breaker.
+   * @param permit Permit for the call.
+   */
+  public synchronized void recordFailure(Permit permit) {
+    if (isCurrentProbe(permit)) {
+      open();
+    }
+    else if (isCurrentClosed(permit)) {
+      record(true);
+      if (callCount >= minimumCalls && (double) failureCount / callCount >= failureRateThreshold) {
+        open();
+      }
+    }
+  }
+
+  /**
+   * Give back permission for a call without recording an outcome, e.g. when it failed for a reason unrelated to the
+   * database. If it was the probe, a half-open breaker then allows another probe.
+   * @param permit Permit for the call.
+   */
+  public synchronized void release(Permit permit) {
+    if (isCurrentProbe(permit)) {
+      probePermit = null;
+    }
+  }
+
+  /**
+   * Return the current time in nanoseconds, as {@link System#nanoTime}. Package-private so that tests can control it.
+   */
+  long nanoTime() {
+    return System.nanoTime();
+  }
+
+  private boolean isCurrentProbe(Permit permit) {
+    return state == State.HALF_OPEN && permit == probePermit;
+  }
+
+  private boolean isCurrentClosed(Permit permit) {
+    return state == State.CLOSED && !permit.isProbe && permit.openCount == openCount;
+  }
+
+  private void record(boolean isFailure) {
+    if (callCount == window.length) {
+      if (window[windowIndex]) {
+        failureCount = failureCount - 1;
+      }
+    }
+    else {
+      callCount = callCount + 1;
+    }
+    window[windowIndex] = isFailure;
+    if (isFailure) {
+      failureCount = failureCount + 1;
+    }
+    windowIndex = (windowIndex + 1) % window.length;
+  }
+
+  private void open() {
+    logger.warning(() -> String.format("Circuit open [%s]", this));
+    state = State.OPEN;
+    probePermit = null;
+    openCount = openCount + 1;
+    openUntilNanos = nanoTime() + openNanos;
+    resetWindow();
+  }
+
+  private void resetWindow() {
+    windowIndex = 0;
+    callCount = 0;
+    failureCount = 0;
+  }
+}
@@ -0,0 +1,20 @@
+package com.easydataservices.open.auth.policy;
+
+import java.sql.SQLTransientException;
+
+/**
+ * Thrown when a call is rejected without being attempted, because the {@link CircuitBreaker} is open.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+public class CircuitOpenException extends SQLTransientException {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Constructor.
+   * @param reason Description of the rejected call.
+   */
+  public CircuitOpenException(String reason) {
+    super(reason, "72008");
+  }
+}
@@ -0,0 +1,31 @@
+package com.easydataservices.open.auth.policy;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+
+/**
+ * Source of connections for a {@link CallPolicy}, e.g. {@code dataSource::getConnection}.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+@FunctionalInterface
+public interface ConnectionSource {
+  /**
+   * Return a connection. The policy closes it after each attempt.
+   * @return Connection.
+   */
+  Connection getConnection() throws SQLException;
+
+  /**
+   * Return a connection, waiting no longer than the specified time for one. The policy passes the time left before its
+   * deadline, less the one second needed for a query. The default implementation calls {@link #getConnection()}, so the
+   * wait is bounded only by the source's own timeout (e.g. the pool connection timeout), which should then be kept shorter
+   * than the policy deadline. Override it where the wait can be bounded per call.
+   * @param maxWait Maximum time to wait for a connection.
+   * @return Connection.
+   */
+  default Connection getConnection(Duration maxWait) throws SQLException {
+    return getConnection();
+  }
+}
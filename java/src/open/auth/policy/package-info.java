@@ -0,0 +1,7 @@
+/**
+ * Provides call policies for AUTH Service DAO methods: deadlines, query timeouts, retries of transient failures, and a
+ * circuit breaker to shed load while the database is saturated.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+package com.easydataservices.open.auth.policy;
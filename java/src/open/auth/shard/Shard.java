@@ -0,0 +1,55 @@
+package com.easydataservices.open.auth.shard;
+
+import javax.sql.DataSource;
+
+/**
+ * Shard object, representing one AUTH Service repository in a sharded session store.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+public class Shard {
+  private final String shardName;
+  private final DataSource dataSource;
+  private final String schemaName;
+
+  /**
+   * Constructor.
+   * @param shardName Shard name. Used to place the shard on the hash ring, so must be stable and unique.
+   * @param dataSource {@link DataSource} for the shard database.
+   * @param schemaName Schema name for the shard session repository.
+   */
+  public Shard(String shardName, DataSource dataSource, String schemaName) {
+    this.shardName = shardName;
+    this.dataSource = dataSource;
+    this.schemaName = schemaName;
+  }
+
+  /**
+   * Return the shard name.
+   * @return Shard name.
+   */
+  public String getShardName() {
+    return shardName;
+  }
+
+  /**
+   * Return the data source for the shard database.
+   * @return Data source.
+   */
+  public DataSource getDataSource() {
+    return dataSource;
+  }
+
+  /**
+   * Return the schema name for the shard session repository.
+   * @return Schema name.
+   */
+  public String getSchemaName() {
+    return schemaName;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[%s %s]", super.toString(), shardName, schemaName);
+  }
+}
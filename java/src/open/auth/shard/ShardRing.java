@@ -0,0 +1,97 @@
+package com.easydataservices.open.auth.shard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable consistent hash ring. Each shard is placed on the ring at a number of virtual nodes, and a session identifier is
+ * owned by the shard at the first virtual node at or after the identifier hash. Adding a shard therefore only moves the
+ * sessions that hash to its virtual nodes.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+public class ShardRing {
+  private final int virtualNodes;
+  private final List<Shard> shards;
+  private final TreeMap<Long, Shard> ring = new TreeMap<Long, Shard>();
+
+  /**
+   * Constructor.
+   * @param shards Shards to place on the ring.
+   * @param virtualNodes Number of virtual nodes per shard.
+   */
+  public ShardRing(List<Shard> shards, int virtualNodes) {
+    if (shards.isEmpty() || virtualNodes < 1) {
+      throw new IllegalArgumentException("At least one shard and one virtual node are required!");
+    }
+    this.virtualNodes = virtualNodes;
+    this.shards = Collections.unmodifiableList(new ArrayList<Shard>(shards));
+    for (Shard shard : shards) {
+      for (int i = 0; i < virtualNodes; i++) {
+        Shard previous = ring.put(hash(shard.getShardName() + "#" + i), shard);
+        if (previous != null && !previous.getShardName().equals(shard.getShardName())) {
+          throw new IllegalArgumentException("Virtual node hash collision between shards " + previous.getShardName() + " and "
+            + shard.getShardName() + "!");
+        }
+      }
+    }
+  }
+
+  /**
+   * Return the shard that owns a session identifier.
+   * @param sessionId Session identifier.
+   * @return Owning shard.
+   */
+  public Shard getShard(String sessionId) {
+    Map.Entry<Long, Shard> entry = ring.ceilingEntry(hash(sessionId));
+    return (entry == null) ? ring.firstEntry().getValue() : entry.getValue();
+  }
+
+  /**
+   * Return the shards on the ring.
+   * @return Unmodifiable list of shards.
+   */
+  public List<Shard> getShards() {
+    return shards;
+  }
+
+  /**
+   * Return a new ring with an additional shard, and the same number of virtual nodes per shard.
+   * @param shard Shard to add.
+   * @return New ring.
+   */
+  public ShardRing withShard(Shard shard) {
+    for (Shard existingShard : shards) {
+      if (existingShard.getShardName().equals(shard.getShardName())) {
+        throw new IllegalArgumentException("Shard " + shard.getShardName() + " is already on the ring!");
+      }
+    }
+    List<Shard> newShards = new ArrayList<Shard>(shards);
+    newShards.add(shard);
+    return new ShardRing(newShards, virtualNodes);
+  }
+
+  /**
+   * Hash a string to a ring position, using 64-bit FNV-1a followed by a final avalanche mix. Stable across JVMs, so that all
+   * nodes agree on session placement.
+   * @param text Text to hash.
+   * @return Hash value.
+   */
+  static long hash(String text) {
+    long hash = 0xcbf29ce484222325L;
+    for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+      hash ^= (b & 0xff);
+      hash *= 0x100000001b3L;
+    }
+    hash ^= (hash >>> 33);
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= (hash >>> 33);
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= (hash >>> 33);
+    return hash;
+  }
+}
@@ -0,0 +1,489 @@
+package com.easydataservices.open.auth.shard;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+import com.easydataservices.open.auth.AuthAttributesDao;
+import com.easydataservices.open.auth.AuthControlDao;
+import com.easydataservices.open.auth.AuthSessionDao;
+import com.easydataservices.open.auth.SessionConfig;
+import com.easydataservices.open.auth.StoreAttribute;
+import com.easydataservices.open.auth.StoreSession;
+import com.easydataservices.open.auth.util.Mask;
+
+/**
+ * Session store sharded across multiple AUTH Service repositories. Provides the combined methods of the control, session and
+ * attributes DAOs, routing each call to the shard that owns the session identifier on a consistent hash {@link ShardRing}.
+ * Each call borrows a connection from the owning shard's data source.
+ * <p>
+ * Changing a session identifier to one owned by a different shard copies the session and its attributes to that shard,
+ * then removes the original. The copy only becomes visible once complete.
+ * <p>
+ * Shards are added online with {@link #addShard}. While rebalancing, a session that is not found on its new owner is looked
+ * up on its previous owner and migrated on first access. Sessions that are never accessed expire on their previous owner, so
+ * once the maximum session lifetime has passed, {@link #completeRebalance} retires the previous ring. The same shard must be
+ * added on every application node.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+public class ShardedAuthStore {
+  private static final String className = ShardedAuthStore.class.getName();
+  private static final Logger logger = Logger.getLogger(className);
+  private static final String COPY_SESSION_ID_PREFIX = "moving-";
+  private static final int REMOVE_ATTEMPTS = 3;
+  private volatile RingState ringState;
+
+  /**
+   * Current ring, and the ring in use before the latest shard was added ({@code null} when not rebalancing).
+   */
+  private static class RingState {
+    private final ShardRing ring;
+    private final ShardRing previousRing;
+
+    private RingState(ShardRing ring, ShardRing previousRing) {
+      this.ring = ring;
+      this.previousRing = previousRing;
+    }
+  }
+
+  /**
+   * Operation on a single shard repository.
+   */
+  private interface ShardOperation<T> {
+    T apply(Connection connection, String schemaName) throws SQLException;
+  }
+
+  /**
+   * Constructor.
+   * @param ring Initial hash ring.
+   */
+  public ShardedAuthStore(ShardRing ring) {
+    logger.finer(() -> String.format("ENTRY %s %s", this, ring));
+    this.ringState = new RingState(ring, null);
+    logger.finer(() -> String.format("RETURN %s", this));
+  }
+
+  /**
+   * Return the shard that owns a session identifier on the current ring.
+   * @param sessionId Session identifier.
+   * @return Owning shard.
+   */
+  public Shard getShard(String sessionId) {
+    return ringState.ring.getShard(sessionId);
+  }
+
+  /**
+   * Add a shard and start rebalancing. New sessions are routed using the new ring immediately; existing sessions are
+   * migrated as they are accessed.
+   * @param shard Shard to add.
+   */
+  public synchronized void addShard(Shard shard) {
+    logger.finer(() -> String.format("ENTRY %s %s", this, shard));
+    if (ringState.previousRing != null) {
+      throw new IllegalStateException("Rebalance already in progress; complete it before adding another shard!");
+    }
+    ringState = new RingState(ringState.ring.withShard(shard), ringState.ring);
+    logger.info(() -> String.format("Rebalancing started for shard %s [%s]", shard.getShardName(), this));
+    logger.finer(() -> String.format("RETURN %s", this));
+  }
+
+  /**
+   * Complete rebalancing, retiring the previous ring. Call once the maximum session lifetime has passed since
+   * {@link #addShard}, when any sessions not yet migrated have expired.
+   */
+  public synchronized void completeRebalance() {
+    logger.finer(() -> String.format("ENTRY %s", this));
+    ringState = new RingState(ringState.ring, null);
+    logger.finer(() -> String.format("RETURN %s", this));
+  }
+
+  /**
+   * Return flag indicating whether or not a rebalance is in progress.
+   * @return {@code true} if rebalancing; otherwise {@code false}.
+   */
+  public boolean isRebalancing() {
+    return ringState.previousRing != null;
+  }
+
+  /**
+   * Add a new session to its owning shard.
+   * @param sessionId Session identifier of new session.
+   * @param sessionConfig Object containing session configuration properties.
+   * @see AuthControlDao#addSession
+   */
+  public void addSession(String sessionId, SessionConfig sessionConfig) throws SQLException {
+    execute(getShard(sessionId), (connection, schemaName) -> {
+      newControlDao(connection, schemaName).addSession(sessionId, sessionConfig);
+      return null;
+    });
+  }
+
+  /**
+   * Update session configuration.
+   * @param sessionId Session identifier.
+   * @param sessionConfig Object containing session configuration properties.
+   * @see AuthControlDao#changeSessionConfig
+   */
+  public void changeSessionConfig(String sessionId, SessionConfig sessionConfig) throws SQLException {
+    executeForSession(sessionId, (connection, schemaName) -> {
+      newControlDao(connection, schemaName).changeSessionConfig(sessionId, sessionConfig);
+      return null;
+    });
+  }
+
+  /**
+   * Remove session. While rebalancing, the session is also removed from its previous owner.
+   * @param sessionId Session identifier of session to remove.
+   * @see AuthControlDao#removeSession
+   */
+  public void removeSession(String sessionId) throws SQLException {
+    RingState currentRingState = ringState;
+    Shard shard = currentRingState.ring.getShard(sessionId);
+    ShardOperation<Void> operation = (connection, schemaName) -> {
+      newControlDao(connection, schemaName).removeSession(sessionId);
+      return null;
+    };
+    execute(shard, operation);
+    Shard previousShard = getPreviousShard(currentRingState, sessionId);
+    if (previousShard != null) {
+      execute(previousShard, operation);
+    }
+  }
+
+  /**
+   * Change session identifier. If the new identifier is owned by a different shard then the session is moved there.
+   * @param sessionId Current session identifier.
+   * @param newSessionId New session identifier.
+   * @see AuthControlDao#changeSessionId
+   */
+  public void changeSessionId(String sessionId, String newSessionId) throws SQLException {
+    final String maskedSessionId = Mask.last(sessionId, 4);
+    final String maskedNewSessionId = Mask.last(newSessionId, 4);
+
+    logger.finer(() -> String.format("ENTRY %s %s %s", this, maskedSessionId, maskedNewSessionId));
+    Shard shard = getShard(sessionId);
+    Shard newShard = getShard(newSessionId);
+    if (shard == newShard) {
+      executeForSession(sessionId, (connection, schemaName) -> {
+        newControlDao(connection, schemaName).changeSessionId(sessionId, newSessionId);
+        return null;
+      });
+    }
+    else {
+      logger.fine(() -> String.format("Moving session from shard %s to %s... [%s %s]", shard.getShardName(),
+        newShard.getShardName(), this, maskedSessionId));
+      if (!moveSession(sessionId, shard, newSessionId, newShard)) {
+        Shard previousShard = getPreviousShard(ringState, sessionId);
+        if (previousShard == null || !moveSession(sessionId, previousShard, newSessionId, newShard)) {
+          throw new SQLException("Session does not exist", "72002");
+        }
+      }
+    }
+    logger.finer(() -> String.format("RETURN %s %s", this, maskedSessionId));
+  }
+
+  /**
+   * Retrieve the specified session.
+   * @param sessionId Session identifier.
+   * @return Store session object; {@code null} if no session is retrieved.
+   * @see AuthSessionDao#getSession
+   */
+  public StoreSession getSession(String sessionId) throws SQLException {
+    ShardOperation<StoreSession> operation = (connection, schemaName) ->
+      newSessionDao(connection, schemaName).getSession(sessionId);
+    StoreSession session = execute(getShard(sessionId), operation);
+    if (session == null && migrateFromPreviousShard(sessionId)) {
+      session = execute(getShard(sessionId), operation);
+    }
+    return session;
+  }
+
+  /**
+   * Retrieve the identifiers of sessions authenticated with the specified authorisation name, from all shards.
+   * @param authName Authorisation name (e.g. user login).
+   * @return List of session identifiers; empty if there are none.
+   * @see AuthSessionDao#getSessionIds
+   */
+  public List<String> getSessionIds(String authName) throws SQLException {
+    RingState currentRingState = ringState;
+    Map<String, Shard> shards = new LinkedHashMap<String, Shard>();
+    for (Shard shard : currentRingState.ring.getShards()) {
+      shards.put(shard.getShardName(), shard);
+    }
+    if (currentRingState.previousRing != null) {
+      for (Shard shard : currentRingState.previousRing.getShards()) {
+        shards.putIfAbsent(shard.getShardName(), shard);
+      }
+    }
+    List<String> sessionIds = new ArrayList<String>();
+    for (Shard shard : shards.values()) {
+      sessionIds.addAll(execute(shard, (connection, schemaName) ->
+        newSessionDao(connection, schemaName).getSessionIds(authName)));
+    }
+    return sessionIds;
+  }
+
+  /**
+   * Retrieve attributes.
+   * @param sessionId Session identifier.
+   * @param sinceGenerationId Earliest attribute generation to include in returned attributes.
+   * @return List of session attributes changed since the specified generation. Deleted attributes are not returned.
+   * @see AuthAttributesDao#getAttributes
+   */
+  public List<StoreAttribute> getAttributes(String sessionId, int sinceGenerationId) throws SQLException {
+    return executeForSession(sessionId, (connection, schemaName) ->
+      newAttributesDao(connection, schemaName).getAttributes(sessionId, sinceGenerationId));
+  }
+
+  /**
+   * Save attributes.
+   * @param sessionId Session identifier.
+   * @param sessionAttributes List of session attributes.
+   * @see AuthAttributesDao#saveAttributes
+   */
+  public void saveAttributes(String sessionId, List<StoreAttribute> sessionAttributes) throws SQLException {
+    executeForSession(sessionId, (connection, schemaName) -> {
+      newAttributesDao(connection, schemaName).saveAttributes(sessionId, sessionAttributes);
+      return null;
+    });
+  }
+
+  /**
+   * Return a session DAO for a shard connection. Package-private so that tests can substitute a stand-in.
+   */
+  AuthSessionDao newSessionDao(Connection connection, String schemaName) {
+    return new AuthSessionDao(connection, schemaName);
+  }
+
+  /**
+   * Return a control DAO for a shard connection. Package-private so that tests can substitute a stand-in.
+   */
+  AuthControlDao newControlDao(Connection connection, String schemaName) {
+    return new AuthControlDao(connection, schemaName);
+  }
+
+  /**
+   * Return an attributes DAO for a shard connection. Package-private so that tests can substitute a stand-in.
+   */
+  AuthAttributesDao newAttributesDao(Connection connection, String schemaName) {
+    return new AuthAttributesDao(connection, schemaName);
+  }
+
+  /**
+   * Execute an operation against a shard, on a connection borrowed from the shard data source.
+   */
+  private <T> T execute(Shard shard, ShardOperation<T> operation) throws SQLException {
+    try (Connection connection = shard.getDataSource().getConnection()) {
+      return operation.apply(connection, shard.getSchemaName());
+    }
+  }
+
+  /**
+   * Execute an operation against the shard that owns a session. If the operation fails with SQLSTATE 72002 (session does not
+   * exist) while rebalancing, the session is migrated from its previous owner and the operation is retried.
+   */
+  private <T> T executeForSession(String sessionId, ShardOperation<T> operation) throws SQLException {
+    try {
+      return execute(getShard(sessionId), operation);
+    }
+    catch (SQLException exception) {
+      if (!"72002".equals(exception.getSQLState()) || !migrateFromPreviousShard(sessionId)) {
+        throw exception;
+      }
+    }
+    return execute(getShard(sessionId), operation);
+  }
+
+  /**
+   * Return the shard that owned a session before the latest shard was added, if different from the current owner.
+   * @return Previous owning shard; {@code null} if not rebalancing or the owner is unchanged.
+   */
+  private Shard getPreviousShard(RingState currentRingState, String sessionId) {
+    if (currentRingState.previousRing == null) {
+      return null;
+    }
+    Shard shard = currentRingState.ring.getShard(sessionId);
+    Shard previousShard = currentRingState.previousRing.getShard(sessionId);
+    return (previousShard == shard) ? null : previousShard;
+  }
+
+  /**
+   * Migrate a session from its previous owner to its current owner, if rebalancing.
+   * @return {@code true} if the session may now be found on its current owner, whether migrated by this thread or by another
+   * thread or node; {@code false} if not rebalancing.
+   */
+  private boolean migrateFromPreviousShard(String sessionId) throws SQLException {
+    RingState currentRingState = ringState;
+    Shard previousShard = getPreviousShard(currentRingState, sessionId);
+    if (previousShard == null) {
+      return false;
+    }
+    final String maskedSessionId = Mask.last(sessionId, 4);
+    logger.fine(() -> String.format("Migrating session from shard %s... [%s %s]", previousShard.getShardName(), this,
+      maskedSessionId));
+    moveSession(sessionId, previousShard, sessionId, currentRingState.ring.getShard(sessionId));
+    return true;
+  }
+
+  /**
+   * Move a session and its attributes to another shard, optionally under a new identifier.
+   * <p>
+   * The session is copied to the target shard under a temporary identifier, then renamed to the target identifier, so that
+   * it only becomes visible once complete and no other thread or node ever uses a partial copy. If the target identifier is
+   * already in use then, for a migration, another thread or node has migrated the session first and this copy is discarded.
+   * Once visible, the copy is kept only if the session still exists on the source shard (it may have been removed since it
+   * was read), and the source session is then removed. The original created, last accessed and authenticated times are
+   * preserved, so the copy expires when the original would have. A copy abandoned by a crash part way through cannot be
+   * reached by any client, and expires.
+   * @param sessionId Session identifier on the source shard.
+   * @param fromShard Source shard.
+   * @param newSessionId Session identifier on the target shard.
+   * @param toShard Target shard.
+   * @return {@code true} if the session was moved (or, for a migration, already has been); {@code false} if it does not exist
+   * on the source shard.
+   */
+  private boolean moveSession(String sessionId, Shard fromShard, String newSessionId, Shard toShard) throws SQLException {
+    final String maskedSessionId = Mask.last(sessionId, 4);
+    final String maskedNewSessionId = Mask.last(newSessionId, 4);
+    final boolean isMigration = sessionId.equals(newSessionId);
+    final String copySessionId = COPY_SESSION_ID_PREFIX + UUID.randomUUID();
+
+    logger.finer(() -> String.format("ENTRY %s %s %s %s", this, maskedSessionId, fromShard, toShard));
+    StoreSession session;
+    List<StoreAttribute> attributes;
+    try (Connection connection = fromShard.getDataSource().getConnection()) {
+      session = newSessionDao(connection, fromShard.getSchemaName()).getSession(sessionId);
+      if (session == null) {
+        logger.finer(() -> String.format("RETURN %s %s %s", this, maskedSessionId, false));
+        return false;
+      }
+      attributes = newAttributesDao(connection, fromShard.getSchemaName()).getAttributes(sessionId, 0);
+    }
+
+    try (Connection connection = toShard.getDataSource().getConnection()) {
+      AuthControlDao controlDao = newControlDao(connection, toShard.getSchemaName());
+      SessionConfig sessionConfig = new SessionConfig();
+      sessionConfig.setChangeTime(session.getCreatedTime());
+      sessionConfig.setMaxIdleMinutes(session.getMaxIdleMinutes());
+      sessionConfig.setPropertiesJson(session.getPropertiesJson());
+      controlDao.addSession(copySessionId, sessionConfig);
+      try {
+        // Restore the last accessed time before authenticating: any configuration change to an authenticated session also
+        // counts as authentication.
+        SessionConfig accessConfig = new SessionConfig();
+        accessConfig.setChangeTime(session.getLastAccessedTime());
+        accessConfig.setMaxIdleMinutes(session.getMaxIdleMinutes());
+        controlDao.changeSessionConfig(copySessionId, accessConfig);
+        if (session.getAuthName() != null) {
+          SessionConfig authConfig = new SessionConfig();
+          authConfig.setChangeTime(session.getLastAuthenticatedTime());
+          authConfig.setAuthName(session.getAuthName());
+          authConfig.setMaxIdleMinutes(session.getMaxIdleMinutes());
+          controlDao.changeSessionConfig(copySessionId, authConfig);
+        }
+        // Give the copy a generation past the source's, so that caches keyed by (identifier, generation) reload the copied
+        // attributes rather than keep what they hold for the source, and delta loads from any cached generation return them.
+        if (!attributes.isEmpty() || session.getAttributeGenerationId() > 0) {
+          newAttributesDao(connection, toShard.getSchemaName()).saveAttributes(copySessionId, attributes,
+            session.getAttributeGenerationId() + 1);
+        }
+        controlDao.changeSessionId(copySessionId, newSessionId);
+      }
+      catch (SQLException exception) {
+        // Discard the copy, which nobody else can see, leaving the session intact on the source shard.
+        removeQuietly(controlDao, copySessionId);
+        if (isMigration && "72004".equals(exception.getSQLState())) {
+          logger.fine(() -> String.format("Session already migrated [%s %s]", this, maskedSessionId));
+          logger.finer(() -> String.format("RETURN %s %s %s", this, maskedSessionId, true));
+          return true;
+        }
+        logger.severe(() -> String.format("RETURN %s %s %s", this, maskedSessionId, exception.getMessage()));
+        throw exception;
+      }
+    }
+
+    // The copy is now visible. If the source session has gone, it was removed (e.g. by logout) after it was read, and the
+    // copy must not outlive it.
+    StoreSession sourceSession = execute(fromShard, (connection, schemaName) ->
+      newSessionDao(connection, schemaName).getSession(sessionId));
+    if (sourceSession == null) {
+      logger.fine(() -> String.format("Session removed from source while moving; discarding copy [%s %s %s]", this,
+        maskedSessionId, maskedNewSessionId));
+      execute(toShard, (connection, schemaName) -> {
+        newControlDao(connection, schemaName).removeSession(newSessionId);
+        return null;
+      });
+      logger.finer(() -> String.format("RETURN %s %s %s", this, maskedSessionId, isMigration));
+      return isMigration;
+    }
+    removeSourceSession(sessionId, fromShard, newSessionId, toShard);
+    logger.finer(() -> String.format("RETURN %s %s %s", this, maskedSessionId, true));
+    return true;
+  }
+
+  /**
+   * Remove the source session once it has been moved, retrying on failure.
+   * <p>
+   * For a migration, the copy on the current owner takes precedence, so a source session that cannot be removed is only
+   * logged, and expires. For a change of session identifier, the old identifier must not stay valid alongside the new one
+   * (e.g. after a change made to prevent session fixation). If it cannot be removed, the new session is removed instead and
+   * the change fails, leaving only the old identifier.
+   */
+  private void removeSourceSession(String sessionId, Shard fromShard, String newSessionId, Shard toShard) throws SQLException {
+    final String maskedSessionId = Mask.last(sessionId, 4);
+    final String maskedNewSessionId = Mask.last(newSessionId, 4);
+    final boolean isMigration = sessionId.equals(newSessionId);
+
+    SQLException removeException = null;
+    for (int attempt = 1; attempt <= REMOVE_ATTEMPTS; attempt++) {
+      try {
+        execute(fromShard, (connection, schemaName) -> {
+          newControlDao(connection, schemaName).removeSession(sessionId);
+          return null;
+        });
+        return;
+      }
+      catch (SQLException exception) {
+        final int failedAttempt = attempt;
+        logger.warning(() -> String.format("Failed to remove moved session from shard %s (attempt %d): %s [%s %s]",
+          fromShard.getShardName(), failedAttempt, exception.getMessage(), this, maskedSessionId));
+        removeException = exception;
+      }
+    }
+    if (isMigration) {
+      return;
+    }
+
+    final SQLException returnException = removeException;
+    logger.severe(() -> String.format("Old session %s not removed after move to %s; removing new session: %s [%s]",
+      maskedSessionId, maskedNewSessionId, returnException.getMessage(), this));
+    try {
+      execute(toShard, (connection, schemaName) -> {
+        newControlDao(connection, schemaName).removeSession(newSessionId);
+        return null;
+      });
+    }
+    catch (SQLException exception) {
+      logger.severe(() -> String.format("Old session %s and new session %s both remain valid: %s [%s]", maskedSessionId,
+        maskedNewSessionId, exception.getMessage(), this));
+    }
+    throw removeException;
+  }
+
+  /**
+   * Remove an unused session copy, logging rather than throwing on failure so that the original exception is reported.
+   */
+  private void removeQuietly(AuthControlDao controlDao, String copySessionId) {
+    try {
+      controlDao.removeSession(copySessionId);
+    }
+    catch (SQLException exception) {
+      logger.warning(() -> String.format("Failed to remove session copy: %s [%s]", exception.getMessage(), this));
+    }
+  }
+}
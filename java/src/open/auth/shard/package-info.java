@@ -0,0 +1,7 @@
+/**
+ * Provides horizontal sharding of sessions across multiple AUTH Service repositories, each hosted by its own database or
+ * schema.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+package com.easydataservices.open.auth.shard;
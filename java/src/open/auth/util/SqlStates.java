@@ -0,0 +1,101 @@
+package com.easydataservices.open.auth.util;
+
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransactionRollbackException;
+import java.sql.SQLTransientException;
+import com.easydataservices.open.auth.InvalidRequestException;
+import com.easydataservices.open.auth.SessionNotFoundException;
+import com.easydataservices.open.auth.SwitchStateException;
+
+/**
+ * SqlStates class. Used to classify exceptions by SQLSTATE, covering both AUTH Service user-defined error codes and Db2
+ * transient conditions.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+public class SqlStates {
+  /**
+   * Return an exception of the most specific type for its SQLSTATE. AUTH Service error codes map onto
+   * {@link SessionNotFoundException}, {@link InvalidRequestException} and {@link SwitchStateException}. Transient Db2
+   * conditions map onto the standard JDBC types: {@link SQLTransactionRollbackException} for deadlocks and lock timeouts,
+   * {@link SQLTimeoutException} for timeouts, {@link SQLRecoverableException} for connection failures, and
+   * {@link SQLTransientException} for other temporary resource shortages. Exceptions already of a transient or recoverable
+   * type, or with no known SQLSTATE, are returned unchanged.
+   * @param exception Exception to classify.
+   * @return Classified exception; wraps the original as its cause if a new exception is created.
+   */
+  public static SQLException classify(SQLException exception) {
+    String sqlState = exception.getSQLState();
+    if (sqlState == null) {
+      return exception;
+    }
+    switch (sqlState) {
+      case "72002":
+        return new SessionNotFoundException(exception);
+      case "72001":
+      case "72003":
+      case "72004":
+      case "72011":
+      case "72012":
+      case "72013":
+      case "72014":
+        return new InvalidRequestException(exception);
+      case "72021":
+      case "72022":
+      case "72023":
+      case "72091":
+        return new SwitchStateException(exception);
+      default:
+        break;
+    }
+    if (exception instanceof SQLTransientException || exception instanceof SQLRecoverableException) {
+      return exception;
+    }
+    String message = exception.getMessage();
+    int errorCode = exception.getErrorCode();
+    if (sqlState.startsWith("40")) {
+      return new SQLTransactionRollbackException(message, sqlState, errorCode, exception);
+    }
+    if (sqlState.equals("72009") || sqlState.equals("57014")) {
+      return new SQLTimeoutException(message, sqlState, errorCode, exception);
+    }
+    if (sqlState.equals("57033") || sqlState.equals("57011") || sqlState.equals("57030")) {
+      return new SQLTransientException(message, sqlState, errorCode, exception);
+    }
+    if (sqlState.startsWith("08")) {
+      return new SQLRecoverableException(message, sqlState, errorCode, exception);
+    }
+    return exception;
+  }
+
+  /**
+   * Return flag indicating whether or not a classified exception is worth retrying. Rolled back work (deadlocks, lock
+   * timeouts and AUTH Service timeouts) is always safe to retry. Other transient failures, such as connection failures and
+   * cancelled queries, leave the outcome unknown, so are retried only for idempotent operations.
+   * @param exception Exception, as returned by {@link #classify}.
+   * @param isIdempotent {@code true} if repeating the operation has the same effect as performing it once.
+   * @return {@code true} if the operation may be retried; otherwise {@code false}.
+   */
+  public static boolean isRetryable(SQLException exception, boolean isIdempotent) {
+    if (!isTransient(exception)) {
+      return false;
+    }
+    String sqlState = exception.getSQLState();
+    if (exception instanceof SQLTransactionRollbackException || "72009".equals(sqlState) || "57033".equals(sqlState)) {
+      return true;
+    }
+    return isIdempotent;
+  }
+
+  /**
+   * Return flag indicating whether or not a classified exception indicates a transient database condition, such as
+   * contention, saturation or connection failure, rather than an error in the request.
+   * @param exception Exception, as returned by {@link #classify}.
+   * @return {@code true} if transient; otherwise {@code false}.
+   */
+  public static boolean isTransient(SQLException exception) {
+    return exception instanceof SQLTransientException || exception instanceof SQLRecoverableException;
+  }
+}
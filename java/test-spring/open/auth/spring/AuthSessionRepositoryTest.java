@@ -0,0 +1,203 @@
+package com.easydataservices.open.auth.spring;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.springframework.session.FindByIndexNameSessionRepository;
+import org.springframework.session.FlushMode;
+import com.easydataservices.open.auth.AuthAttributesDao;
+import com.easydataservices.open.auth.AuthControlDao;
+import com.easydataservices.open.auth.AuthSessionDao;
+import com.easydataservices.open.auth.InMemoryAuthStore;
+
+/**
+ * Tests for {@link AuthSessionRepository}, against an {@link InMemoryAuthStore}. Two repositories sharing a store stand in
+ * for two application nodes.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+class AuthSessionRepositoryTest {
+  private final InMemoryAuthStore store = new InMemoryAuthStore();
+
+  private AuthSessionRepository newRepository() {
+    return new AuthSessionRepository(store.getDataSource(), "MEMORY", 100) {
+      @Override
+      AuthSessionDao newSessionDao(Connection connection) {
+        return store.newSessionDao();
+      }
+
+      @Override
+      AuthControlDao newControlDao(Connection connection) {
+        return store.newControlDao();
+      }
+
+      @Override
+      AuthAttributesDao newAttributesDao(Connection connection) {
+        return store.newAttributesDao();
+      }
+    };
+  }
+
+  private String saveNewSession(AuthSessionRepository repository, String... attributeNames) {
+    AuthSession session = repository.createSession();
+    for (String attributeName : attributeNames) {
+      session.setAttribute(attributeName, attributeName + "-1");
+    }
+    repository.save(session);
+    return session.getId();
+  }
+
+  @Test
+  void findLoadsOnlyAttributesChangedSinceCachedGeneration() {
+    AuthSessionRepository node1 = newRepository();
+    AuthSessionRepository node2 = newRepository();
+    String id = saveNewSession(node1, "a", "b");
+    assertEquals("b-1", node2.findById(id).getAttribute("b"));
+
+    AuthSession session = node1.findById(id);
+    session.setAttribute("a", "a-2");
+    node1.save(session);
+    store.clearCalls();
+
+    AuthSession loadedSession = node2.findById(id);
+    assertEquals("a-2", loadedSession.getAttribute("a"));
+    assertEquals("b-1", loadedSession.getAttribute("b"));
+    assertTrue(store.getCalls().contains("getAttributes since 1: [a]"), store.getCalls().toString());
+  }
+
+  @Test
+  void findWithCurrentCachedGenerationLoadsNoAttributes() {
+    AuthSessionRepository node1 = newRepository();
+    String id = saveNewSession(node1, "a");
+    node1.findById(id);
+    store.clearCalls();
+
+    assertEquals("a-1", node1.findById(id).getAttribute("a"));
+    assertEquals(List.of("getSession"), store.getCalls());
+  }
+
+  @Test
+  void findDropsAttributeRemovedOnAnotherNode() {
+    AuthSessionRepository node1 = newRepository();
+    AuthSessionRepository node2 = newRepository();
+    String id = saveNewSession(node1, "a", "securityContext");
+    assertNotNull(node2.findById(id).getAttribute("securityContext"));
+
+    AuthSession session = node1.findById(id);
+    session.removeAttribute("securityContext");
+    node1.save(session);
+
+    AuthSession loadedSession = node2.findById(id);
+    assertNull(loadedSession.getAttribute("securityContext"));
+    assertEquals(Set.of("a"), loadedSession.getAttributeNames());
+  }
+
+  @Test
+  void saveSendsOnlyChangedAndRemovedAttributes() {
+    AuthSessionRepository repository = newRepository();
+    String id = saveNewSession(repository, "a", "b", "c");
+
+    AuthSession session = repository.findById(id);
+    session.setAttribute("a", "a-2");
+    session.removeAttribute("b");
+    store.clearCalls();
+    repository.save(session);
+
+    assertTrue(store.getCalls().contains("saveAttributes [a, b]"), store.getCalls().toString());
+    assertEquals(Set.of("a", "c"), store.getStoredAttributeNames(id));
+    store.clearCalls();
+    repository.save(session);
+    assertFalse(store.getCalls().stream().anyMatch(call -> call.startsWith("saveAttributes")), store.getCalls().toString());
+  }
+
+  @Test
+  void onSaveFlushModeWritesOnlyOnSave() {
+    AuthSessionRepository repository = newRepository();
+    AuthSession session = repository.createSession();
+    session.setAttribute("a", "a-1");
+    assertEquals(-1, store.getGenerationId(session.getId()));
+
+    repository.save(session);
+    assertEquals(Set.of("a"), store.getStoredAttributeNames(session.getId()));
+  }
+
+  @Test
+  void immediateFlushModeWritesEachChange() {
+    AuthSessionRepository repository = newRepository();
+    repository.setFlushMode(FlushMode.IMMEDIATE);
+    AuthSession session = repository.createSession();
+    assertEquals(0, store.getGenerationId(session.getId()));
+
+    session.setAttribute("a", "a-1");
+    assertEquals(Set.of("a"), store.getStoredAttributeNames(session.getId()));
+    session.removeAttribute("a");
+    assertEquals(Set.of(), store.getStoredAttributeNames(session.getId()));
+  }
+
+  @Test
+  void changeSessionIdMovesSessionAndAttributes() {
+    AuthSessionRepository repository = newRepository();
+    String id = saveNewSession(repository, "a");
+
+    AuthSession session = repository.findById(id);
+    String newId = session.changeSessionId();
+    repository.save(session);
+
+    assertNull(repository.findById(id));
+    assertEquals("a-1", repository.findById(newId).getAttribute("a"));
+  }
+
+  @Test
+  void changeSessionIdWithImmediateFlushModeTakesEffectAtOnce() {
+    AuthSessionRepository repository = newRepository();
+    repository.setFlushMode(FlushMode.IMMEDIATE);
+    AuthSession session = repository.createSession();
+    session.setAttribute("a", "a-1");
+
+    String id = session.getId();
+    String newId = session.changeSessionId();
+    assertEquals(-1, store.getGenerationId(id));
+    assertEquals(Set.of("a"), store.getStoredAttributeNames(newId));
+  }
+
+  @Test
+  void sessionInUseDoesNotExpire() {
+    AuthSessionRepository repository = newRepository();
+    String id = saveNewSession(repository, "a");
+
+    // The store default idle limit is 10 minutes; each access moves expiry forward.
+    for (int i = 0; i < 3; i++) {
+      store.advance(Duration.ofMinutes(6));
+      assertNotNull(repository.findById(id));
+    }
+    store.advance(Duration.ofMinutes(11));
+    assertNull(repository.findById(id));
+  }
+
+  @Test
+  void listingSessionsDoesNotExtendExpiry() {
+    AuthSessionRepository repository = newRepository();
+    AuthSession session = repository.createSession();
+    session.setAttribute(FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, "user");
+    repository.save(session);
+    String id = session.getId();
+
+    // The store default idle limit is 10 minutes; listing is not an access, so expiry stays 10 minutes after the save.
+    store.advance(Duration.ofMinutes(6));
+    assertEquals(Set.of(id), repository.findByIndexNameAndIndexValue(
+      FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, "user").keySet());
+    assertTrue(store.getCalls().contains("peekSession"), store.getCalls().toString());
+    store.advance(Duration.ofMinutes(5));
+    assertNull(repository.findById(id));
+    assertTrue(repository.findByIndexNameAndIndexValue(FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, "user")
+      .isEmpty());
+  }
+}
@@ -0,0 +1,743 @@
+package com.easydataservices.open.auth;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.sql.DataSource;
+
+/**
+ * In-memory stand-in for an AUTH Service repository, for unit tests.
+ * <p>
+ * DAOs returned by this class are subclasses of the real DAOs that act on in-memory state instead of calling stored
+ * procedures. They follow the procedures' documented behaviour: SQLSTATEs, attribute generations (a save bumps the session
+ * generation only if something changed), delta loads that do not return deleted attributes, and the names-only mode used to
+ * detect deletions. The store clock starts at the current time and is moved on by the test through {@link #advance}.
+ * Every DAO call is recorded for assertions, and calls can be made to fail through {@link #setFailure}.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+public class InMemoryAuthStore {
+  private static final short DEFAULT_MAX_IDLE_MINUTES = 10;
+  private static final short MAX_AUTHENTICATION_MINUTES = 1440;
+  private final Map<String, SessionRow> sessions = new HashMap<String, SessionRow>();
+  private final List<String> calls = new ArrayList<String>();
+  private final Map<String, String> failures = new HashMap<String, String>();
+  private final ControlRow control = new ControlRow();
+  private Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+
+  /**
+   * Stored session row.
+   */
+  private static class SessionRow {
+    private Instant createdTime;
+    private Instant lastAccessedTime;
+    private Instant lastAuthenticatedTime;
+    private Short maxIdleMinutes;
+    private Instant expiryTime;
+    private String authName;
+    private String propertiesJson;
+    private int generationId;
+    private final Map<String, AttributeRow> attributes = new LinkedHashMap<String, AttributeRow>();
+  }
+
+  /**
+   * Session control row (SESCTL), with the rows left for each switch to move.
+   */
+  private static class ControlRow {
+    private boolean isSwitching;
+    private boolean isAttributeSwitching;
+    private short sessionMoveCommitLimit = 50;
+    private short sessionMoveSleepSeconds = 1;
+    private short attributeMoveCommitLimit = 10;
+    private short attributeMoveSleepSeconds = 1;
+    private boolean isMoveStopRequested;
+    private String cyclePhase;
+    private Short savedSessionMoveCommitLimit;
+    private Short savedSessionMoveSleepSeconds;
+    private Short savedAttributeMoveCommitLimit;
+    private Short savedAttributeMoveSleepSeconds;
+    private long switchSessionRows;
+    private long switchAttributeRows;
+    private long unmovedSessionRows;
+    private long unmovedAttributeRows;
+    private boolean isMoveRunning;
+  }
+
+  /**
+   * Stored attribute row.
+   */
+  private static class AttributeRow {
+    private final int generationId;
+    private final byte[] object;
+
+    private AttributeRow(int generationId, byte[] object) {
+      this.generationId = generationId;
+      this.object = object;
+    }
+  }
+
+  /**
+   * Return a {@link DataSource} whose connections do nothing. Code under test can borrow and close connections as normal,
+   * while its DAOs are replaced by those of this store.
+   * @return Data source.
+   */
+  public DataSource getDataSource() {
+    Connection connection = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+      new Class<?>[] {Connection.class}, (proxy, method, args) -> defaultValue(method.getReturnType()));
+    return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {DataSource.class},
+      (proxy, method, args) -> "getConnection".equals(method.getName()) ? connection : defaultValue(method.getReturnType()));
+  }
+
+  /**
+   * Advance the store clock.
+   * @param duration Duration.
+   */
+  public synchronized void advance(Duration duration) {
+    now = now.plus(duration);
+  }
+
+  /**
+   * Return the store clock.
+   * @return Current store time.
+   */
+  public synchronized Instant now() {
+    return now;
+  }
+
+  /**
+   * Return the DAO calls made since the store was created or {@link #clearCalls} was last called, e.g.
+   * {@code "getAttributes since 3: [a, b]"}.
+   * @return List of calls.
+   */
+  public synchronized List<String> getCalls() {
+    return new ArrayList<String>(calls);
+  }
+
+  /**
+   * Forget recorded DAO calls.
+   */
+  public synchronized void clearCalls() {
+    calls.clear();
+  }
+
+  /**
+   * Make calls to a DAO method fail, until cleared.
+   * @param methodName DAO method name, e.g. {@code "removeSession"}.
+   * @param sqlState SQLSTATE of the exception to throw; {@code null} to clear.
+   */
+  public synchronized void setFailure(String methodName, String sqlState) {
+    if (sqlState == null) {
+      failures.remove(methodName);
+    }
+    else {
+      failures.put(methodName, sqlState);
+    }
+  }
+
+  /**
+   * Return the identifiers of stored sessions.
+   * @return Session identifiers.
+   */
+  public synchronized Set<String> getStoredSessionIds() {
+    return new LinkedHashSet<String>(sessions.keySet());
+  }
+
+  /**
+   * Set the number of rows that each partition switch started from now on has to move.
+   * @param sessionRows Session rows.
+   * @param attributeRows Attribute rows.
+   */
+  public synchronized void setSwitchRows(long sessionRows, long attributeRows) {
+    control.switchSessionRows = sessionRows;
+    control.switchAttributeRows = attributeRows;
+  }
+
+  /**
+   * Return flag indicating whether or not a move is running.
+   * @return {@code true} if a move is running; otherwise {@code false}.
+   */
+  public synchronized boolean isMoveRunning() {
+    return control.isMoveRunning;
+  }
+
+  /**
+   * Return the control row, as {@link AuthAdminDao#getSwitchStatus} would.
+   * @return Switch status.
+   */
+  public synchronized SwitchStatus getSwitchStatus() {
+    SwitchStatus switchStatus = new SwitchStatus();
+    switchStatus.setSwitching(control.isSwitching);
+    switchStatus.setAttributeSwitching(control.isAttributeSwitching);
+    switchStatus.setSessionMoveCommitLimit(control.sessionMoveCommitLimit);
+    switchStatus.setSessionMoveSleepSeconds(control.sessionMoveSleepSeconds);
+    switchStatus.setAttributeMoveCommitLimit(control.attributeMoveCommitLimit);
+    switchStatus.setAttributeMoveSleepSeconds(control.attributeMoveSleepSeconds);
+    switchStatus.setMoveStopRequested(control.isMoveStopRequested);
+    switchStatus.setCyclePhase(control.cyclePhase);
+    switchStatus.setSavedSessionMoveCommitLimit(control.savedSessionMoveCommitLimit);
+    switchStatus.setSavedSessionMoveSleepSeconds(control.savedSessionMoveSleepSeconds);
+    switchStatus.setSavedAttributeMoveCommitLimit(control.savedAttributeMoveCommitLimit);
+    switchStatus.setSavedAttributeMoveSleepSeconds(control.savedAttributeMoveSleepSeconds);
+    return switchStatus;
+  }
+
+  /**
+   * Return the attribute generation of a stored session.
+   * @param sessionId Session identifier.
+   * @return Attribute generation; -1 if the session does not exist.
+   */
+  public synchronized int getGenerationId(String sessionId) {
+    SessionRow row = sessions.get(sessionId);
+    return (row == null) ? -1 : row.generationId;
+  }
+
+  /**
+   * Return the names of the stored attributes of a session.
+   * @param sessionId Session identifier.
+   * @return Attribute names; empty if the session does not exist.
+   */
+  public synchronized Set<String> getStoredAttributeNames(String sessionId) {
+    SessionRow row = sessions.get(sessionId);
+    return (row == null) ? new LinkedHashSet<String>() : new LinkedHashSet<String>(row.attributes.keySet());
+  }
+
+  /**
+   * Return a session DAO backed by this store.
+   * @return Session DAO.
+   */
+  public AuthSessionDao newSessionDao() {
+    return new AuthSessionDao(null, "MEMORY") {
+      @Override
+      public StoreSession getSession(String sessionId) throws SQLException {
+        return InMemoryAuthStore.this.getSession(sessionId, true);
+      }
+
+      @Override
+      public StoreSession peekSession(String sessionId) throws SQLException {
+        return InMemoryAuthStore.this.getSession(sessionId, false);
+      }
+
+      @Override
+      public List<String> getSessionIds(String authName) throws SQLException {
+        return InMemoryAuthStore.this.getSessionIds(authName);
+      }
+    };
+  }
+
+  /**
+   * Return a control DAO backed by this store.
+   * @return Control DAO.
+   */
+  public AuthControlDao newControlDao() {
+    return new AuthControlDao(null, "MEMORY") {
+      @Override
+      public void addSession(String sessionId, SessionConfig sessionConfig) throws SQLException {
+        InMemoryAuthStore.this.addSession(sessionId, sessionConfig);
+      }
+
+      @Override
+      public void changeSessionConfig(String sessionId, SessionConfig sessionConfig) throws SQLException {
+        InMemoryAuthStore.this.changeSessionConfig(sessionId, sessionConfig);
+      }
+
+      @Override
+      public void removeSession(String sessionId) throws SQLException {
+        InMemoryAuthStore.this.removeSession(sessionId);
+      }
+
+      @Override
+      public void changeSessionId(String sessionId, String newSessionId) throws SQLException {
+        InMemoryAuthStore.this.changeSessionId(sessionId, newSessionId);
+      }
+    };
+  }
+
+  /**
+   * Return an attributes DAO backed by this store.
+   * @return Attributes DAO.
+   */
+  public AuthAttributesDao newAttributesDao() {
+    return new AuthAttributesDao(null, "MEMORY") {
+      @Override
+      public List<StoreAttribute> getAttributes(String sessionId, int sinceGenerationId) throws SQLException {
+        List<StoreAttribute> attributes = new ArrayList<StoreAttribute>();
+        for (Map.Entry<String, byte[]> entry : InMemoryAuthStore.this.getAttributes(sessionId, sinceGenerationId).entrySet()) {
+          StoreAttribute attribute = new StoreAttribute(entry.getKey());
+          attribute.setObject(deserialize(entry.getValue()));
+          attributes.add(attribute);
+        }
+        return attributes;
+      }
+
+      @Override
+      public Map<String, byte[]> getSerializedAttributes(String sessionId, int sinceGenerationId) throws SQLException {
+        return InMemoryAuthStore.this.getAttributes(sessionId, sinceGenerationId);
+      }
+
+      @Override
+      public Set<String> getAttributeNames(String sessionId) throws SQLException {
+        return InMemoryAuthStore.this.getAttributeNames(sessionId);
+      }
+
+      @Override
+      public void saveAttributes(String sessionId, List<StoreAttribute> sessionAttributes, int minGenerationId)
+        throws SQLException {
+        Map<String, byte[]> attributes = new LinkedHashMap<String, byte[]>();
+        for (StoreAttribute attribute : sessionAttributes) {
+          attributes.put(attribute.getAttributeName(), (attribute.getObject() == null) ? null : serialize(attribute.getObject()));
+        }
+        InMemoryAuthStore.this.saveAttributes(sessionId, attributes, minGenerationId);
+      }
+    };
+  }
+
+  /**
+   * Return an admin DAO backed by this store. Moves commit every commit limit rows, then sleep for the sleep value in
+   * milliseconds rather than seconds, so that a test can watch a move run and change its pacing.
+   * @return Admin DAO.
+   */
+  public AuthAdminDao newAdminDao() {
+    return new AuthAdminDao(null, "MEMORY") {
+      @Override
+      public void startSessionSwitch() throws SQLException {
+        InMemoryAuthStore.this.startSwitch(false);
+      }
+
+      @Override
+      public void moveSessions() throws SQLException {
+        InMemoryAuthStore.this.move(false);
+      }
+
+      @Override
+      public void endSessionSwitch() throws SQLException {
+        InMemoryAuthStore.this.endSwitch(false);
+      }
+
+      @Override
+      public void startAttributeSwitch() throws SQLException {
+        InMemoryAuthStore.this.startSwitch(true);
+      }
+
+      @Override
+      public void moveAttributes() throws SQLException {
+        InMemoryAuthStore.this.move(true);
+      }
+
+      @Override
+      public void endAttributeSwitch() throws SQLException {
+        InMemoryAuthStore.this.endSwitch(true);
+      }
+
+      @Override
+      public void requestMoveStop() throws SQLException {
+        InMemoryAuthStore.this.requestMoveStop();
+      }
+
+      @Override
+      public void changeMovePacing(Short sessionMoveCommitLimit, Short sessionMoveSleepSeconds,
+        Short attributeMoveCommitLimit, Short attributeMoveSleepSeconds) throws SQLException {
+        InMemoryAuthStore.this.changeMovePacing(sessionMoveCommitLimit, sessionMoveSleepSeconds, attributeMoveCommitLimit,
+          attributeMoveSleepSeconds);
+      }
+
+      @Override
+      public void changeCyclePhase(String cyclePhase) throws SQLException {
+        InMemoryAuthStore.this.changeCyclePhase(cyclePhase);
+      }
+
+      @Override
+      public SwitchStatus getSwitchStatus() throws SQLException {
+        return InMemoryAuthStore.this.getSwitchStatus();
+      }
+
+      @Override
+      public long getUnmovedSessionsCount() throws SQLException {
+        return InMemoryAuthStore.this.getUnmovedCount(false);
+      }
+
+      @Override
+      public long getUnmovedAttributesCount() throws SQLException {
+        return InMemoryAuthStore.this.getUnmovedCount(true);
+      }
+    };
+  }
+
+  private synchronized StoreSession getSession(String sessionId, boolean isAccess) throws SQLException {
+    record(isAccess ? "getSession" : "peekSession");
+    SessionRow row = sessions.get(sessionId);
+    if (row == null) {
+      return null;
+    }
+    StoreSession session = new StoreSession(sessionId);
+    session.setCreatedTime(row.createdTime);
+    session.setLastAccessedTime(row.lastAccessedTime);
+    session.setLastAuthenticatedTime(row.lastAuthenticatedTime);
+    session.setMaxIdleMinutes((row.maxIdleMinutes == null) ? DEFAULT_MAX_IDLE_MINUTES : row.maxIdleMinutes);
+    session.setMaxAuthenticationMinutes(MAX_AUTHENTICATION_MINUTES);
+    session.setExpiryTime(row.expiryTime);
+    session.setAuthName(row.authName);
+    session.setPropertiesJson(row.propertiesJson);
+    session.setAuthenticated(row.authName != null);
+    session.setExpired(row.expiryTime.isBefore(now));
+    session.setAttributeGenerationId(row.generationId);
+
+    // As SESSION.GET_SESSION: an access moves the expiry time forward. SESSION.PEEK_SESSION leaves it unchanged.
+    if (isAccess && !session.isExpired()) {
+      row.lastAccessedTime = now;
+      row.expiryTime = expiryTime(row);
+    }
+    return session;
+  }
+
+  private synchronized List<String> getSessionIds(String authName) throws SQLException {
+    record("getSessionIds");
+    List<String> sessionIds = new ArrayList<String>();
+    for (Map.Entry<String, SessionRow> entry : sessions.entrySet()) {
+      if (authName.equals(entry.getValue().authName)) {
+        sessionIds.add(entry.getKey());
+      }
+    }
+    return sessionIds;
+  }
+
+  private synchronized void addSession(String sessionId, SessionConfig sessionConfig) throws SQLException {
+    record("addSession");
+    if (sessions.containsKey(sessionId)) {
+      throw new SQLException("Session already exists", "72001");
+    }
+    // As CONTROL.ADD_SESSION: the session is created at the change time.
+    SessionRow row = new SessionRow();
+    row.createdTime = changeTime(sessionConfig);
+    row.lastAccessedTime = row.createdTime;
+    sessions.put(sessionId, row);
+    applyConfig(row, sessionConfig);
+  }
+
+  private synchronized void changeSessionConfig(String sessionId, SessionConfig sessionConfig) throws SQLException {
+    record("changeSessionConfig");
+    applyConfig(getRow(sessionId), sessionConfig);
+  }
+
+  private synchronized void removeSession(String sessionId) throws SQLException {
+    record("removeSession");
+    sessions.remove(sessionId);
+  }
+
+  private synchronized void changeSessionId(String sessionId, String newSessionId) throws SQLException {
+    record("changeSessionId");
+    if (sessions.containsKey(newSessionId)) {
+      throw new SQLException("Session identifier already in use", "72004");
+    }
+    sessions.put(newSessionId, getRow(sessionId));
+    sessions.remove(sessionId);
+  }
+
+  private synchronized Map<String, byte[]> getAttributes(String sessionId, int sinceGenerationId) throws SQLException {
+    Map<String, byte[]> attributes = new LinkedHashMap<String, byte[]>();
+    for (Map.Entry<String, AttributeRow> entry : getRow(sessionId).attributes.entrySet()) {
+      if (entry.getValue().generationId > sinceGenerationId) {
+        attributes.put(entry.getKey(), entry.getValue().object.clone());
+      }
+    }
+    record("getAttributes", "getAttributes since " + sinceGenerationId + ": " + attributes.keySet());
+    return attributes;
+  }
+
+  private synchronized Set<String> getAttributeNames(String sessionId) throws SQLException {
+    Set<String> attributeNames = new LinkedHashSet<String>(getRow(sessionId).attributes.keySet());
+    record("getAttributeNames");
+    return attributeNames;
+  }
+
+  private synchronized void saveAttributes(String sessionId, Map<String, byte[]> attributes, int minGenerationId)
+    throws SQLException {
+    SessionRow row = getRow(sessionId);
+    boolean isChanged = false;
+    record("saveAttributes", "saveAttributes " + attributes.keySet());
+
+    // As ATTRIBUTES.SAVE_ATTRIBUTES: changes get the next generation, or the minimum generation if that is higher.
+    int newGenerationId = Math.max(row.generationId + 1, minGenerationId);
+    for (Map.Entry<String, byte[]> attribute : attributes.entrySet()) {
+      AttributeRow attributeRow = row.attributes.get(attribute.getKey());
+      if (attribute.getValue() == null) {
+        // As ATTRIBUTES.SAVE_ATTRIBUTES: a deleted attribute is removed, leaving no trace for delta loads.
+        if (row.attributes.remove(attribute.getKey()) != null) {
+          isChanged = true;
+        }
+      }
+      else if (attributeRow == null || !Arrays.equals(attributeRow.object, attribute.getValue())) {
+        row.attributes.put(attribute.getKey(), new AttributeRow(newGenerationId, attribute.getValue().clone()));
+        isChanged = true;
+      }
+    }
+    if (isChanged || minGenerationId > row.generationId) {
+      row.generationId = newGenerationId;
+    }
+  }
+
+  /**
+   * Start a switch, as ADMIN.START_SESSION_SWITCH and ADMIN.START_ATTRIBUTE_SWITCH.
+   */
+  private synchronized void startSwitch(boolean isAttributeSwitch) throws SQLException {
+    record(isAttributeSwitch ? "startAttributeSwitch" : "startSessionSwitch");
+    if (isAttributeSwitch ? control.isSwitching : control.isAttributeSwitching) {
+      throw new SQLException("Session and attribute switch cannot run in parallel", "72023");
+    }
+    control.isMoveStopRequested = false;
+    if (isAttributeSwitch && !control.isAttributeSwitching) {
+      control.isAttributeSwitching = true;
+      control.unmovedAttributeRows = control.switchAttributeRows;
+    }
+    else if (!isAttributeSwitch && !control.isSwitching) {
+      control.isSwitching = true;
+      control.unmovedSessionRows = control.switchSessionRows;
+    }
+  }
+
+  /**
+   * Move rows, as ADMIN.MOVE_SESSIONS and ADMIN.MOVE_ATTRIBUTES: commit limit rows at a time, sleeping and checking for a
+   * stop request after each commit. The store is not locked while sleeping.
+   */
+  private void move(boolean isAttributeMove) throws SQLException {
+    synchronized (this) {
+      record(isAttributeMove ? "moveAttributes" : "moveSessions");
+      if (!(isAttributeMove ? control.isAttributeSwitching : control.isSwitching)) {
+        throw new SQLException("Switch is not started", "72021");
+      }
+      control.isMoveStopRequested = false;
+      control.isMoveRunning = true;
+    }
+    try {
+      while (true) {
+        int sleepMillis;
+        synchronized (this) {
+          if (isAttributeMove) {
+            control.unmovedAttributeRows = Math.max(0, control.unmovedAttributeRows - control.attributeMoveCommitLimit);
+            sleepMillis = (control.unmovedAttributeRows == 0) ? -1 : control.attributeMoveSleepSeconds;
+          }
+          else {
+            control.unmovedSessionRows = Math.max(0, control.unmovedSessionRows - control.sessionMoveCommitLimit);
+            sleepMillis = (control.unmovedSessionRows == 0) ? -1 : control.sessionMoveSleepSeconds;
+          }
+        }
+        if (sleepMillis < 0) {
+          return;
+        }
+        Thread.sleep(1 + sleepMillis);
+        synchronized (this) {
+          if (control.isMoveStopRequested) {
+            return;
+          }
+        }
+      }
+    }
+    catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Move interrupted", "57014", exception);
+    }
+    finally {
+      synchronized (this) {
+        control.isMoveRunning = false;
+      }
+    }
+  }
+
+  /**
+   * End a switch, as ADMIN.END_SESSION_SWITCH and ADMIN.END_ATTRIBUTE_SWITCH.
+   */
+  private synchronized void endSwitch(boolean isAttributeSwitch) throws SQLException {
+    record(isAttributeSwitch ? "endAttributeSwitch" : "endSessionSwitch");
+    if (!(isAttributeSwitch ? control.isAttributeSwitching : control.isSwitching)) {
+      throw new SQLException("Switch is not started", "72021");
+    }
+    if (getUnmovedCount(isAttributeSwitch) > 0) {
+      throw new SQLException("Active partition is not empty", "72022");
+    }
+    if (isAttributeSwitch) {
+      control.isAttributeSwitching = false;
+    }
+    else {
+      control.isSwitching = false;
+    }
+  }
+
+  private synchronized void requestMoveStop() throws SQLException {
+    record("requestMoveStop");
+    control.isMoveStopRequested = true;
+  }
+
+  private synchronized void changeMovePacing(Short sessionMoveCommitLimit, Short sessionMoveSleepSeconds,
+    Short attributeMoveCommitLimit, Short attributeMoveSleepSeconds) throws SQLException {
+    record("changeMovePacing", String.format("changeMovePacing %s %s %s %s", sessionMoveCommitLimit, sessionMoveSleepSeconds,
+      attributeMoveCommitLimit, attributeMoveSleepSeconds));
+    control.sessionMoveCommitLimit = coalesce(sessionMoveCommitLimit, control.sessionMoveCommitLimit);
+    control.sessionMoveSleepSeconds = coalesce(sessionMoveSleepSeconds, control.sessionMoveSleepSeconds);
+    control.attributeMoveCommitLimit = coalesce(attributeMoveCommitLimit, control.attributeMoveCommitLimit);
+    control.attributeMoveSleepSeconds = coalesce(attributeMoveSleepSeconds, control.attributeMoveSleepSeconds);
+  }
+
+  /**
+   * Record the cycle phase, as ADMIN.CHANGE_CYCLE_PHASE: pacing is saved when a cycle begins and restored when it ends.
+   */
+  private synchronized void changeCyclePhase(String cyclePhase) throws SQLException {
+    record("changeCyclePhase", "changeCyclePhase " + cyclePhase);
+    if (cyclePhase == null) {
+      control.sessionMoveCommitLimit = coalesce(control.savedSessionMoveCommitLimit, control.sessionMoveCommitLimit);
+      control.sessionMoveSleepSeconds = coalesce(control.savedSessionMoveSleepSeconds, control.sessionMoveSleepSeconds);
+      control.attributeMoveCommitLimit = coalesce(control.savedAttributeMoveCommitLimit, control.attributeMoveCommitLimit);
+      control.attributeMoveSleepSeconds = coalesce(control.savedAttributeMoveSleepSeconds, control.attributeMoveSleepSeconds);
+      control.savedSessionMoveCommitLimit = null;
+      control.savedSessionMoveSleepSeconds = null;
+      control.savedAttributeMoveCommitLimit = null;
+      control.savedAttributeMoveSleepSeconds = null;
+    }
+    else {
+      control.savedSessionMoveCommitLimit = coalesce(control.savedSessionMoveCommitLimit, control.sessionMoveCommitLimit);
+      control.savedSessionMoveSleepSeconds = coalesce(control.savedSessionMoveSleepSeconds, control.sessionMoveSleepSeconds);
+      control.savedAttributeMoveCommitLimit = coalesce(control.savedAttributeMoveCommitLimit,
+        control.attributeMoveCommitLimit);
+      control.savedAttributeMoveSleepSeconds = coalesce(control.savedAttributeMoveSleepSeconds,
+        control.attributeMoveSleepSeconds);
+    }
+    control.cyclePhase = cyclePhase;
+  }
+
+  private synchronized long getUnmovedCount(boolean isAttributeSwitch) throws SQLException {
+    record(isAttributeSwitch ? "getUnmovedAttributesCount" : "getUnmovedSessionsCount");
+    if (isAttributeSwitch) {
+      return control.isAttributeSwitching ? control.unmovedAttributeRows : 0;
+    }
+    return control.isSwitching ? control.unmovedSessionRows : 0;
+  }
+
+  private static short coalesce(Short value, short defaultValue) {
+    return (value == null) ? defaultValue : value;
+  }
+
+  /**
+   * Record a DAO call, then fail it if a failure is set for the method.
+   */
+  private void record(String methodName) throws SQLException {
+    record(methodName, methodName);
+  }
+
+  private void record(String methodName, String call) throws SQLException {
+    calls.add(call);
+    String sqlState = failures.get(methodName);
+    if (sqlState != null) {
+      throw new SQLException("Injected failure", sqlState);
+    }
+  }
+
+  private SessionRow getRow(String sessionId) throws SQLException {
+    SessionRow row = sessions.get(sessionId);
+    if (row == null) {
+      throw new SQLException("Session does not exist", "72002");
+    }
+    return row;
+  }
+
+  /**
+   * Apply a configuration change, as CONTROL.AUX_CHSECF.
+   */
+  private void applyConfig(SessionRow row, SessionConfig sessionConfig) throws SQLException {
+    Object[] rowObject = sessionConfig.getRowObject();
+    Instant changeTime = changeTime(sessionConfig);
+    String authName = (String) rowObject[1];
+    Short maxIdleMinutes = (Short) rowObject[2];
+    if (authName != null && row.authName != null && !authName.equals(row.authName)) {
+      throw new SQLException("AUTH_NAME cannot be changed", "72011");
+    }
+    if (maxIdleMinutes != null && (maxIdleMinutes < 1 || maxIdleMinutes > 1440)) {
+      throw new SQLException("MAX_IDLE_MINUTES out of range", "72013");
+    }
+    if (changeTime.isAfter(row.lastAccessedTime)) {
+      row.lastAccessedTime = changeTime;
+    }
+    if (row.authName == null) {
+      row.authName = authName;
+    }
+    if (row.authName != null && (row.lastAuthenticatedTime == null || changeTime.isAfter(row.lastAuthenticatedTime))) {
+      row.lastAuthenticatedTime = changeTime;
+    }
+    row.maxIdleMinutes = maxIdleMinutes;
+    if (rowObject[3] != null) {
+      row.propertiesJson = (String) rowObject[3];
+    }
+    row.expiryTime = expiryTime(row);
+  }
+
+  /**
+   * Return the effective change time of a configuration change: the requested time, but no later than now.
+   */
+  private Instant changeTime(SessionConfig sessionConfig) {
+    Instant changeTime = (Instant) sessionConfig.getRowObject()[0];
+    return (changeTime == null || changeTime.isAfter(now)) ? now : changeTime;
+  }
+
+  /**
+   * Calculate the expiry time, as COMMON.EXPIRY_TS.
+   */
+  private static Instant expiryTime(SessionRow row) {
+    short maxIdleMinutes = (row.maxIdleMinutes == null) ? DEFAULT_MAX_IDLE_MINUTES : row.maxIdleMinutes;
+    Instant idleExpiryTime = row.lastAccessedTime.plus(Duration.ofMinutes(maxIdleMinutes));
+    if (row.lastAuthenticatedTime == null) {
+      return idleExpiryTime;
+    }
+    Instant authenticationExpiryTime = row.lastAuthenticatedTime.plus(Duration.ofMinutes(MAX_AUTHENTICATION_MINUTES));
+    return idleExpiryTime.isBefore(authenticationExpiryTime) ? idleExpiryTime : authenticationExpiryTime;
+  }
+
+  private static Object defaultValue(Class<?> type) {
+    if (type == boolean.class) {
+      return false;
+    }
+    if (type == int.class) {
+      return 0;
+    }
+    if (type == long.class) {
+      return 0L;
+    }
+    return null;
+  }
+
+  private static byte[] serialize(Object object) throws SQLException {
+    try (
+      ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+      ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream);
+    )
+    {
+      objectOutputStream.writeObject(object);
+      objectOutputStream.flush();
+      return byteArrayOutputStream.toByteArray();
+    }
+    catch (IOException exception) {
+      throw new SQLException("IOException occurred when converting attribute object!", "72099", exception);
+    }
+  }
+
+  private static Object deserialize(byte[] bytes) throws SQLException {
+    try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+      return objectInputStream.readObject();
+    }
+    catch (IOException | ClassNotFoundException exception) {
+      throw new SQLException("Exception occurred when converting attribute object!", "72099", exception);
+    }
+  }
+}
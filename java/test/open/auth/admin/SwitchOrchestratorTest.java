@@ -0,0 +1,216 @@
+package com.easydataservices.open.auth.admin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+import com.easydataservices.open.auth.AuthAdminDao;
+import com.easydataservices.open.auth.AuthSessionDao;
+import com.easydataservices.open.auth.InMemoryAuthStore;
+import com.easydataservices.open.auth.StoreSession;
+import com.easydataservices.open.auth.SwitchStatus;
+
+/**
+ * Tests for {@link SwitchOrchestrator}, with an {@link InMemoryAuthStore} standing in for the session repository and a
+ * latency sampler that reacts to the running move.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+class SwitchOrchestratorTest {
+  private static final Duration ON_TARGET = Duration.ofMillis(10);
+  private static final Duration ABOVE_TARGET = Duration.ofMillis(100);
+  private static final Duration ABOVE_STOP = Duration.ofMillis(300);
+  private final InMemoryAuthStore store = new InMemoryAuthStore();
+  private final SwitchConfig config = new SwitchConfig();
+  private volatile LocalTime localTime = LocalTime.of(12, 0);
+
+  SwitchOrchestratorTest() {
+    config.setPollInterval(Duration.ofMillis(5));
+    config.setCountInterval(Duration.ZERO);
+    store.setSwitchRows(1000, 200);
+  }
+
+  private SwitchOrchestrator newOrchestrator() {
+    return newOrchestrator(store.newSessionDao());
+  }
+
+  private SwitchOrchestrator newOrchestrator(AuthSessionDao probeDao) {
+    return new SwitchOrchestrator(store.getDataSource(), "MEMORY", config) {
+      @Override
+      AuthAdminDao newAdminDao(Connection connection) {
+        return store.newAdminDao();
+      }
+
+      @Override
+      AuthSessionDao newSessionDao(Connection connection) {
+        return probeDao;
+      }
+
+      @Override
+      LocalTime getLocalTime() {
+        return localTime;
+      }
+    };
+  }
+
+  private boolean runCycle(SwitchOrchestrator orchestrator) {
+    return assertTimeoutPreemptively(Duration.ofSeconds(30), orchestrator::runCycle);
+  }
+
+  private long countCalls(String call) {
+    return store.getCalls().stream().filter(call::equals).count();
+  }
+
+  private void assertPacingRestored() {
+    SwitchStatus switchStatus = store.getSwitchStatus();
+    assertFalse(switchStatus.isSwitching());
+    assertFalse(switchStatus.isAttributeSwitching());
+    assertNull(switchStatus.getCyclePhase());
+    assertEquals(50, switchStatus.getSessionMoveCommitLimit());
+    assertEquals(1, switchStatus.getSessionMoveSleepSeconds());
+    assertEquals(10, switchStatus.getAttributeMoveCommitLimit());
+    assertEquals(1, switchStatus.getAttributeMoveSleepSeconds());
+    assertNull(switchStatus.getSavedSessionMoveCommitLimit());
+    assertNull(switchStatus.getSavedAttributeMoveCommitLimit());
+  }
+
+  @Test
+  void windowWithinDayIncludesStartAndExcludesEnd() {
+    config.setWindow(LocalTime.of(1, 0), LocalTime.of(5, 0));
+    SwitchOrchestrator orchestrator = newOrchestrator();
+    assertFalse(orchestrator.isInWindow(LocalTime.of(0, 59, 59)));
+    assertTrue(orchestrator.isInWindow(LocalTime.of(1, 0)));
+    assertTrue(orchestrator.isInWindow(LocalTime.of(4, 59, 59)));
+    assertFalse(orchestrator.isInWindow(LocalTime.of(5, 0)));
+    assertFalse(orchestrator.isInWindow(LocalTime.MIDNIGHT));
+  }
+
+  @Test
+  void windowCrossingMidnightIncludesBothSides() {
+    config.setWindow(LocalTime.of(22, 0), LocalTime.of(2, 0));
+    SwitchOrchestrator orchestrator = newOrchestrator();
+    assertFalse(orchestrator.isInWindow(LocalTime.of(21, 59, 59)));
+    assertTrue(orchestrator.isInWindow(LocalTime.of(22, 0)));
+    assertTrue(orchestrator.isInWindow(LocalTime.MAX));
+    assertTrue(orchestrator.isInWindow(LocalTime.MIDNIGHT));
+    assertTrue(orchestrator.isInWindow(LocalTime.of(1, 59, 59)));
+    assertFalse(orchestrator.isInWindow(LocalTime.of(2, 0)));
+    assertFalse(orchestrator.isInWindow(LocalTime.NOON));
+  }
+
+  @Test
+  void noWindowMeansAlwaysInWindow() {
+    SwitchOrchestrator orchestrator = newOrchestrator();
+    assertTrue(orchestrator.isInWindow(LocalTime.NOON));
+    config.setWindow(LocalTime.of(3, 0), LocalTime.of(3, 0));
+    assertTrue(orchestrator.isInWindow(LocalTime.NOON));
+  }
+
+  @Test
+  void latencyAboveTargetHalvesCommitLimitThenCycleRestoresIt() {
+    config.setLatencySampler(() -> store.isMoveRunning() ? ABOVE_TARGET : ON_TARGET);
+    assertTrue(runCycle(newOrchestrator()));
+
+    List<String> calls = store.getCalls();
+    assertTrue(calls.contains("changeMovePacing 25 2 null null"), calls.toString());
+    assertFalse(calls.contains("requestMoveStop"), calls.toString());
+    assertEquals("changeMovePacing 50 1 null null", calls.get(calls.indexOf("startAttributeSwitch") - 1));
+    assertPacingRestored();
+  }
+
+  @Test
+  void latencyOnTargetIncreasesCommitLimit() {
+    config.setLatencySampler(() -> ON_TARGET);
+    assertTrue(runCycle(newOrchestrator()));
+
+    List<String> calls = store.getCalls();
+    assertTrue(calls.contains("changeMovePacing 60 0 null null"), calls.toString());
+    assertPacingRestored();
+  }
+
+  @Test
+  void latencyAboveStopLatencyStopsMoveThenResumes() {
+    AtomicBoolean isSpiked = new AtomicBoolean();
+    config.setLatencySampler(() -> (store.isMoveRunning() && isSpiked.compareAndSet(false, true)) ? ABOVE_STOP : ON_TARGET);
+    assertTrue(runCycle(newOrchestrator()));
+
+    assertEquals(1, countCalls("requestMoveStop"), store.getCalls().toString());
+    assertTrue(countCalls("moveSessions") + countCalls("moveAttributes") > 2, store.getCalls().toString());
+    assertPacingRestored();
+  }
+
+  @Test
+  void failedProbeStopsMoveWithoutAbortingCycle() {
+    AtomicBoolean isFailed = new AtomicBoolean();
+    AuthSessionDao sessionDao = store.newSessionDao();
+    AuthSessionDao probeDao = new AuthSessionDao(null, "MEMORY") {
+      @Override
+      public StoreSession getSession(String sessionId) throws SQLException {
+        if (store.isMoveRunning() && isFailed.compareAndSet(false, true)) {
+          throw new IllegalStateException("Injected failure");
+        }
+        return sessionDao.getSession(sessionId);
+      }
+    };
+    assertTrue(runCycle(newOrchestrator(probeDao)));
+
+    assertTrue(isFailed.get());
+    assertEquals(1, countCalls("requestMoveStop"), store.getCalls().toString());
+    assertPacingRestored();
+  }
+
+  @Test
+  void moveWaitsForWindowAndStopsWhenItClosesAfterMidnight() {
+    config.setWindow(LocalTime.of(22, 0), LocalTime.of(2, 0));
+    localTime = LocalTime.of(21, 59, 59);
+    AtomicBoolean isClosed = new AtomicBoolean();
+    config.setLatencySampler(() -> {
+      if (store.isMoveRunning() && isClosed.compareAndSet(false, true)) {
+        localTime = LocalTime.of(2, 0);
+      }
+      return ON_TARGET;
+    });
+    SwitchOrchestrator orchestrator = new SwitchOrchestrator(store.getDataSource(), "MEMORY", config) {
+      @Override
+      AuthAdminDao newAdminDao(Connection connection) {
+        return store.newAdminDao();
+      }
+
+      @Override
+      AuthSessionDao newSessionDao(Connection connection) {
+        return store.newSessionDao();
+      }
+
+      @Override
+      LocalTime getLocalTime() {
+        // Each time is seen once, while no move runs: the window opens at 22:00, and reopens the next night at 23:30.
+        LocalTime time = localTime;
+        if (!store.isMoveRunning()) {
+          if (time.equals(LocalTime.of(21, 59, 59))) {
+            assertEquals(List.of(), store.getCalls());
+            localTime = LocalTime.of(22, 0);
+          }
+          else if (time.equals(LocalTime.of(2, 0))) {
+            localTime = LocalTime.of(23, 30);
+          }
+        }
+        return time;
+      }
+    };
+    assertTrue(runCycle(orchestrator));
+
+    assertTrue(isClosed.get());
+    assertEquals(LocalTime.of(23, 30), localTime);
+    assertEquals(1, countCalls("requestMoveStop"), store.getCalls().toString());
+    assertPacingRestored();
+  }
+}
@@ -0,0 +1,255 @@
+package com.easydataservices.open.auth.cache;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+import com.easydataservices.open.auth.AuthAttributesDao;
+import com.easydataservices.open.auth.AuthControlDao;
+import com.easydataservices.open.auth.InMemoryAuthStore;
+import com.easydataservices.open.auth.SessionConfig;
+import com.easydataservices.open.auth.StoreAttribute;
+
+/**
+ * Tests for {@link OffHeapAttributeCache}, refreshed from an {@link InMemoryAuthStore}.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+class OffHeapAttributeCacheTest {
+  private static final String SESSION_ID = "session-1";
+  private final InMemoryAuthStore store = new InMemoryAuthStore();
+  private final AuthAttributesDao attributesDao = store.newAttributesDao();
+  private final OffHeapAttributeCache cache = new OffHeapAttributeCache(4 * 4096, 4, 4096, 64);
+
+  private void addSession(String... attributeNames) throws SQLException {
+    AuthControlDao controlDao = store.newControlDao();
+    controlDao.addSession(SESSION_ID, new SessionConfig());
+    saveAttributes("-1", attributeNames);
+  }
+
+  private void saveAttributes(String suffix, String... attributeNames) throws SQLException {
+    List<StoreAttribute> attributes = new ArrayList<StoreAttribute>();
+    for (String attributeName : attributeNames) {
+      StoreAttribute attribute = new StoreAttribute(attributeName);
+      attribute.setObject((suffix == null) ? null : attributeName + suffix);
+      attributes.add(attribute);
+    }
+    attributesDao.saveAttributes(SESSION_ID, attributes);
+  }
+
+  /**
+   * Return a single-segment cache of 4 slabs of 1024 bytes, in 64 byte blocks.
+   */
+  private static OffHeapAttributeCache newSmallCache() {
+    return new OffHeapAttributeCache(4 * 1024, 1, 1024, 64);
+  }
+
+  private static byte[] newBytes(int length, int value) {
+    byte[] bytes = new byte[length];
+    Arrays.fill(bytes, (byte) value);
+    return bytes;
+  }
+
+  private int refresh() throws SQLException {
+    int generationId = store.getGenerationId(SESSION_ID);
+    assertTrue(cache.refresh(SESSION_ID, generationId, attributesDao));
+    return generationId;
+  }
+
+  @Test
+  void refreshAppliesChangesSinceCachedGeneration() throws Exception {
+    addSession("a", "b");
+    refresh();
+    saveAttributes("-2", "a");
+    store.clearCalls();
+
+    int generationId = refresh();
+    assertTrue(store.getCalls().contains("getAttributes since 1: [a]"), store.getCalls().toString());
+    assertEquals("a-2", cache.getObject(SESSION_ID, "a", generationId));
+    assertEquals("b-1", cache.getObject(SESSION_ID, "b", generationId));
+  }
+
+  @Test
+  void refreshRemovesDeletedAttributes() throws Exception {
+    addSession("a", "b", "c");
+    refresh();
+    saveAttributes(null, "b");
+    saveAttributes("-2", "a");
+
+    int generationId = refresh();
+    assertEquals(Set.of("a", "c"), cache.getAttributeNames(SESSION_ID, generationId));
+    assertNull(cache.getBytes(SESSION_ID, "b", generationId));
+    assertEquals("a-2", cache.getObject(SESSION_ID, "a", generationId));
+  }
+
+  @Test
+  void slabsAreAllocatedOnDemandAndFreedBlocksReused() {
+    OffHeapAttributeCache smallCache = newSmallCache();
+    assertEquals(0, smallCache.getAllocatedBytes());
+
+    assertTrue(smallCache.putAttributes("s1", 0, 1, Map.of("a", newBytes(100, 1))));
+    assertEquals(1024, smallCache.getAllocatedBytes());
+    assertEquals(100, smallCache.getUsedBytes());
+
+    smallCache.removeSession("s1");
+    assertEquals(0, smallCache.getUsedBytes());
+    assertEquals(1024, smallCache.getAllocatedBytes());
+
+    // 16 sessions of 64 bytes fill the 16 blocks of the first slab, reusing the blocks freed above.
+    for (int i = 0; i < 16; i++) {
+      assertTrue(smallCache.putAttributes("s" + i, 0, 1, Map.of("a", newBytes(64, i))));
+    }
+    assertEquals(1024, smallCache.getAllocatedBytes());
+    assertTrue(smallCache.putAttributes("s16", 0, 1, Map.of("a", newBytes(64, 16))));
+    assertEquals(2048, smallCache.getAllocatedBytes());
+    assertEquals(0, smallCache.getEvictionCount());
+    assertArrayEquals(newBytes(64, 3), smallCache.getBytes("s3", "a", 1));
+  }
+
+  @Test
+  void memoryCapIsHonoured() {
+    OffHeapAttributeCache smallCache = newSmallCache();
+    for (int i = 0; i < 50; i++) {
+      assertTrue(smallCache.putAttributes("s" + i, 0, 1, Map.of("a", newBytes(500, i))));
+      assertTrue(smallCache.getAllocatedBytes() <= 4 * 1024);
+    }
+    assertEquals(4 * 1024, smallCache.getAllocatedBytes());
+    assertTrue(smallCache.getUsedBytes() <= 4 * 1024);
+    // Each session takes 8 blocks of 64 bytes, so at most 8 fit.
+    assertEquals(8, smallCache.getSessionCount());
+    assertEquals(42, smallCache.getEvictionCount());
+    assertArrayEquals(newBytes(500, 49), smallCache.getBytes("s49", "a", 1));
+  }
+
+  @Test
+  void clockEvictsColdSessionsBeforeHotOnes() {
+    OffHeapAttributeCache smallCache = newSmallCache();
+    for (int i = 0; i < 4; i++) {
+      assertTrue(smallCache.putAttributes("s" + i, 0, 1, Map.of("a", newBytes(1024, i))));
+    }
+
+    // All sessions are equally recent, so the first to be added is evicted, and the others lose their reference bit.
+    assertTrue(smallCache.putAttributes("s4", 0, 1, Map.of("a", newBytes(1024, 4))));
+    assertEquals(-1, smallCache.getGenerationId("s0"));
+
+    // Reading s1 and s3 makes them hot; s2 is now the cold one.
+    assertArrayEquals(newBytes(1024, 1), smallCache.getBytes("s1", "a", 1));
+    assertArrayEquals(newBytes(1024, 3), smallCache.getBytes("s3", "a", 1));
+    assertTrue(smallCache.putAttributes("s5", 0, 1, Map.of("a", newBytes(1024, 5))));
+    assertEquals(-1, smallCache.getGenerationId("s2"));
+    assertEquals(1, smallCache.getGenerationId("s1"));
+    assertEquals(1, smallCache.getGenerationId("s3"));
+    assertEquals(2, smallCache.getEvictionCount());
+  }
+
+  @Test
+  void attributeLargerThanSlabSpansSlabsButLargerThanSegmentIsRejected() {
+    OffHeapAttributeCache smallCache = newSmallCache();
+    assertTrue(smallCache.putAttributes("small", 0, 1, Map.of("a", newBytes(100, 1))));
+
+    // Blocks need not be contiguous, so an attribute may span slabs.
+    byte[] largeBytes = newBytes(2500, 2);
+    largeBytes[2499] = 3;
+    assertTrue(smallCache.putAttributes("large", 0, 1, Map.of("a", largeBytes)));
+    assertArrayEquals(largeBytes, smallCache.getBytes("large", "a", 1));
+    assertEquals(3 * 1024, smallCache.getAllocatedBytes());
+
+    // An attribute larger than the whole segment is not cached, and does not evict anything to make room.
+    assertFalse(smallCache.putAttributes("huge", 0, 1, Map.of("b", newBytes(100, 4), "a", newBytes(5000, 4))));
+    assertEquals(-1, smallCache.getGenerationId("huge"));
+    assertEquals(2, smallCache.getSessionCount());
+    assertEquals(2600, smallCache.getUsedBytes());
+    assertEquals(0, smallCache.getEvictionCount());
+  }
+
+  @Test
+  void staleUpdateDoesNotReplaceOrEvictNewerSession() {
+    OffHeapAttributeCache smallCache = newSmallCache();
+    assertTrue(smallCache.putAttributes(SESSION_ID, 0, 3, Map.of("a", newBytes(10, 3))));
+
+    // As from concurrent refreshes that finish out of order: a delta and a full load older than the cached generation.
+    assertFalse(smallCache.putAttributes(SESSION_ID, 1, 2, Map.of("a", newBytes(10, 2))));
+    assertFalse(smallCache.putAttributes(SESSION_ID, 0, 2, Map.of("a", newBytes(10, 2))));
+    assertTrue(smallCache.putAttributes(SESSION_ID, 0, 3, Map.of("a", newBytes(10, 9))));
+    assertEquals(3, smallCache.getGenerationId(SESSION_ID));
+    assertArrayEquals(newBytes(10, 3), smallCache.getBytes(SESSION_ID, "a", 3));
+
+    assertTrue(smallCache.putAttributes(SESSION_ID, 3, 4, Map.of("a", newBytes(10, 4))));
+    assertArrayEquals(newBytes(10, 4), smallCache.getBytes(SESSION_ID, "a", 4));
+  }
+
+  @Test
+  void concurrentReadersSeeConsistentAttributesDuringRefresh() throws Exception {
+    addSession("a", "b");
+    refresh();
+    AtomicBoolean isDone = new AtomicBoolean();
+    CountDownLatch startLatch = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(6);
+    try {
+      List<Future<Integer>> readers = new ArrayList<Future<Integer>>();
+      for (int i = 0; i < 4; i++) {
+        Callable<Integer> reader = () -> {
+          int hitCount = 0;
+          startLatch.await();
+          while (!isDone.get()) {
+            // Attributes are saved together, so a session cached at any generation has matching values, no older than it.
+            int generationId = cache.getGenerationId(SESSION_ID);
+            Object a = cache.getObject(SESSION_ID, "a", generationId);
+            Object b = cache.getObject(SESSION_ID, "b", generationId);
+            if (a != null && b != null) {
+              String suffix = ((String) a).substring(1);
+              assertEquals("b" + suffix, b);
+              assertTrue(Integer.parseInt(suffix.substring(1)) >= generationId, a + " at " + generationId);
+              hitCount = hitCount + 1;
+            }
+          }
+          return hitCount;
+        };
+        readers.add(executor.submit(reader));
+      }
+
+      // A second refresher races the writer's own refreshes.
+      Future<Void> refresher = executor.submit(() -> {
+        startLatch.await();
+        while (!isDone.get()) {
+          cache.refresh(SESSION_ID, store.getGenerationId(SESSION_ID), attributesDao);
+        }
+        return null;
+      });
+      startLatch.countDown();
+      for (int i = 2; i <= 200; i++) {
+        saveAttributes("-" + i, "a", "b");
+        cache.refresh(SESSION_ID, store.getGenerationId(SESSION_ID), attributesDao);
+      }
+      isDone.set(true);
+      refresher.get(10, TimeUnit.SECONDS);
+      for (Future<Integer> reader : readers) {
+        assertTrue(reader.get(10, TimeUnit.SECONDS) > 0);
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+
+    int generationId = refresh();
+    assertEquals(200, generationId);
+    assertEquals("a-200", cache.getObject(SESSION_ID, "a", generationId));
+    assertEquals("b-200", cache.getObject(SESSION_ID, "b", generationId));
+  }
+}
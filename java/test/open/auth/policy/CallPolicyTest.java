@@ -0,0 +1,333 @@
+package com.easydataservices.open.auth.policy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientException;
+import java.sql.Struct;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import com.easydataservices.open.auth.AuthSessionDao;
+import com.easydataservices.open.auth.SessionNotFoundException;
+import com.easydataservices.open.auth.StoreSession;
+
+/**
+ * Tests for {@link CallPolicy}, with a fake clock, a fake connection source and scripted call failures.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+class CallPolicyTest {
+  private static final long READ_NANOS = 1000;
+  private final FakeConnectionSource connectionSource = new FakeConnectionSource();
+  private final List<Integer> queryTimeouts = new ArrayList<Integer>();
+  private long nanos;
+
+  /**
+   * Connection source whose connections do nothing, counting connections opened and closed. Acquisition takes the acquire
+   * delay on the fake clock. Statements record their query timeouts, and executing one fails with each of the statement
+   * failure SQLSTATEs in turn; after that it returns an empty session info structure, as for a session that does not exist.
+   */
+  private class FakeConnectionSource implements ConnectionSource {
+    private int openCount;
+    private int closeCount;
+    private Duration acquireDelay = Duration.ZERO;
+    private final List<Duration> maxWaits = new ArrayList<Duration>();
+    private final List<String> statementSqls = new ArrayList<String>();
+    private final List<Integer> statementQueryTimeouts = new ArrayList<Integer>();
+    private final Deque<String> statementFailures = new ArrayDeque<String>();
+    private int statementCloseCount;
+
+    @Override
+    public Connection getConnection() throws SQLException {
+      nanos = nanos + acquireDelay.toNanos();
+      openCount = openCount + 1;
+      return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Connection.class},
+        (proxy, method, args) -> {
+          if ("close".equals(method.getName())) {
+            closeCount = closeCount + 1;
+          }
+          if ("prepareCall".equals(method.getName())) {
+            statementSqls.add((String) args[0]);
+            return newStatement();
+          }
+          return (method.getReturnType() == boolean.class) ? false : null;
+        });
+    }
+
+    @Override
+    public Connection getConnection(Duration maxWait) throws SQLException {
+      maxWaits.add(maxWait);
+      return getConnection();
+    }
+
+    private CallableStatement newStatement() {
+      return (CallableStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {CallableStatement.class},
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "setQueryTimeout":
+              statementQueryTimeouts.add((Integer) args[0]);
+              return null;
+            case "execute":
+              String sqlState = statementFailures.poll();
+              if (sqlState != null) {
+                throw new SQLException("Injected failure", sqlState);
+              }
+              return false;
+            case "getObject":
+              return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Struct.class},
+                (structProxy, structMethod, structArgs) -> new Object[11]);
+            case "close":
+              statementCloseCount = statementCloseCount + 1;
+              return null;
+            default:
+              return (method.getReturnType() == boolean.class) ? false : null;
+          }
+        });
+    }
+  }
+
+  /**
+   * Read the fake clock. Each read advances it slightly, as real time passes between reads.
+   */
+  private long readClock() {
+    nanos = nanos + READ_NANOS;
+    return nanos;
+  }
+
+  private CallPolicy newCallPolicy() {
+    CallPolicy callPolicy = new CallPolicy(connectionSource) {
+      @Override
+      long nanoTime() {
+        return readClock();
+      }
+
+      @Override
+      void sleep(long sleepNanos) {
+        nanos = nanos + sleepNanos;
+      }
+    };
+    callPolicy.setBackoff(Duration.ofMillis(1), Duration.ofMillis(5));
+    return callPolicy;
+  }
+
+  private CircuitBreaker newCircuitBreaker() {
+    return new CircuitBreaker(2, 2, 0.5, Duration.ofMillis(50)) {
+      @Override
+      long nanoTime() {
+        return readClock();
+      }
+    };
+  }
+
+  /**
+   * Return a call that fails with each of the specified SQLSTATEs in turn, then returns "done".
+   */
+  private AuthCall<String> failingCall(String... sqlStates) {
+    Deque<String> failures = new ArrayDeque<String>(Arrays.asList(sqlStates));
+    return (connection, queryTimeoutSeconds) -> {
+      queryTimeouts.add(queryTimeoutSeconds);
+      String sqlState = failures.poll();
+      if (sqlState != null) {
+        throw new SQLException("Injected failure", sqlState);
+      }
+      return "done";
+    };
+  }
+
+  /**
+   * Return a call that retrieves a session through a real {@link AuthSessionDao}.
+   */
+  private static AuthCall<StoreSession> getSessionCall(String sessionId) {
+    return (connection, queryTimeoutSeconds) -> {
+      AuthSessionDao sessionDao = new AuthSessionDao(connection, "AUTH");
+      sessionDao.setQueryTimeout(queryTimeoutSeconds);
+      return sessionDao.getSession(sessionId);
+    };
+  }
+
+  @Test
+  void retriesRollbackAndResourceFailures() throws SQLException {
+    CallPolicy callPolicy = newCallPolicy();
+    assertEquals("done", callPolicy.execute("test", false, failingCall("40001", "57033")));
+    assertEquals(3, queryTimeouts.size());
+    assertEquals(3, connectionSource.closeCount);
+  }
+
+  @Test
+  void failsFastOnRequestError() {
+    CallPolicy callPolicy = newCallPolicy();
+    assertThrows(SessionNotFoundException.class, () -> callPolicy.execute("test", true, failingCall("72002")));
+    assertEquals(1, queryTimeouts.size());
+  }
+
+  @Test
+  void retriesConnectionFailureOnlyIfIdempotent() throws SQLException {
+    CallPolicy callPolicy = newCallPolicy();
+    assertThrows(SQLRecoverableException.class, () -> callPolicy.execute("test", false, failingCall("08001")));
+    assertEquals(1, queryTimeouts.size());
+
+    queryTimeouts.clear();
+    assertEquals("done", callPolicy.execute("test", true, failingCall("08001")));
+    assertEquals(2, queryTimeouts.size());
+  }
+
+  @Test
+  void stopsAfterMaxAttempts() {
+    CallPolicy callPolicy = newCallPolicy();
+    callPolicy.setMaxAttempts(2);
+    SQLException exception = assertThrows(SQLTransientException.class,
+      () -> callPolicy.execute("test", true, failingCall("57033", "57033", "57033")));
+    assertEquals("57033", exception.getSQLState());
+    assertEquals(2, queryTimeouts.size());
+  }
+
+  @Test
+  void queryTimeoutDoesNotExceedTimeLeft() throws SQLException {
+    CallPolicy callPolicy = newCallPolicy();
+    callPolicy.setDeadline(Duration.ofSeconds(2));
+    callPolicy.setAttemptTimeout(Duration.ofSeconds(5));
+    callPolicy.execute("test", true, failingCall());
+    assertEquals(List.of(1), queryTimeouts);
+  }
+
+  @Test
+  void smallestDeadlineAllowsOneAttempt() throws SQLException {
+    CallPolicy callPolicy = newCallPolicy();
+    callPolicy.setDeadline(Duration.ofSeconds(1));
+    assertEquals("done", callPolicy.execute("test", true, failingCall()));
+    assertEquals(List.of(1), queryTimeouts);
+    assertEquals(List.of(Duration.ZERO), connectionSource.maxWaits);
+
+    // No time is left for a retry.
+    queryTimeouts.clear();
+    SQLException exception = assertThrows(SQLException.class, () -> callPolicy.execute("test", true, failingCall("40001")));
+    assertEquals("40001", exception.getSQLState());
+    assertEquals(List.of(1), queryTimeouts);
+  }
+
+  @Test
+  void noAttemptWithLessThanOneSecondLeft() {
+    CallPolicy callPolicy = newCallPolicy();
+    callPolicy.setDeadline(Duration.ofMillis(1500));
+    AuthCall<String> call = (connection, queryTimeoutSeconds) -> {
+      queryTimeouts.add(queryTimeoutSeconds);
+      nanos = nanos + Duration.ofMillis(600).toNanos();
+      throw new SQLException("Injected failure", "40001");
+    };
+    long startNanos = nanos;
+    SQLException exception = assertThrows(SQLException.class, () -> callPolicy.execute("test", true, call));
+    assertEquals("40001", exception.getSQLState());
+    assertEquals(1, queryTimeouts.size());
+    assertTrue(nanos - startNanos < Duration.ofMillis(1500).toNanos());
+  }
+
+  @Test
+  void connectionWaitCountsAgainstDeadline() {
+    CallPolicy callPolicy = newCallPolicy();
+    callPolicy.setDeadline(Duration.ofSeconds(2));
+    connectionSource.acquireDelay = Duration.ofMillis(1200);
+    SQLException exception = assertThrows(SQLTimeoutException.class, () -> callPolicy.execute("test", true, failingCall()));
+    assertEquals("72009", exception.getSQLState());
+    assertEquals(0, queryTimeouts.size());
+    assertEquals(1, connectionSource.closeCount);
+    assertTrue(connectionSource.maxWaits.get(0).compareTo(Duration.ofSeconds(1)) <= 0, connectionSource.maxWaits.toString());
+  }
+
+  @Test
+  void daoCallGetsQueryTimeoutAndIsRetried() throws SQLException {
+    CallPolicy callPolicy = newCallPolicy();
+    callPolicy.setDeadline(Duration.ofSeconds(10));
+    callPolicy.setAttemptTimeout(Duration.ofSeconds(3));
+    connectionSource.statementFailures.add("40001");
+    assertNull(callPolicy.execute("getSession", true, getSessionCall("session-1")));
+    assertEquals(List.of("CALL AUTH.session.get_session(?, ?)", "CALL AUTH.session.get_session(?, ?)"),
+      connectionSource.statementSqls);
+    assertEquals(List.of(3, 3), connectionSource.statementQueryTimeouts);
+    assertEquals(2, connectionSource.statementCloseCount);
+    assertEquals(2, connectionSource.closeCount);
+  }
+
+  @Test
+  void daoCallFailureIsClassifiedAndRecordedByBreaker() {
+    CallPolicy callPolicy = newCallPolicy();
+    callPolicy.setDeadline(Duration.ofMillis(2500));
+    callPolicy.setAttemptTimeout(Duration.ofSeconds(2));
+    callPolicy.setMaxAttempts(2);
+    CircuitBreaker circuitBreaker = newCircuitBreaker();
+    callPolicy.setCircuitBreaker(circuitBreaker);
+    connectionSource.statementFailures.addAll(List.of("57014", "57014"));
+    // A statement timeout is retried for an idempotent call, and each attempt is recorded by the breaker.
+    SQLException exception = assertThrows(SQLTimeoutException.class,
+      () -> callPolicy.execute("getSession", true, getSessionCall("session-1")));
+    assertEquals("57014", exception.getSQLState());
+    assertEquals(List.of(2, 2), connectionSource.statementQueryTimeouts);
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    assertThrows(CircuitOpenException.class, () -> callPolicy.execute("getSession", true, getSessionCall("session-1")));
+    assertEquals(2, connectionSource.statementSqls.size());
+  }
+
+  @Test
+  void breakerRejectsCallsWhileOpenAndClosesAfterSuccessfulProbe() throws Exception {
+    CallPolicy callPolicy = newCallPolicy();
+    callPolicy.setMaxAttempts(1);
+    CircuitBreaker circuitBreaker = newCircuitBreaker();
+    callPolicy.setCircuitBreaker(circuitBreaker);
+    for (int i = 0; i < 2; i++) {
+      assertThrows(SQLTransientException.class, () -> callPolicy.execute("test", true, failingCall("57033")));
+    }
+    assertThrows(CircuitOpenException.class, () -> callPolicy.execute("test", true, failingCall()));
+    assertEquals(2, connectionSource.openCount);
+
+    nanos = nanos + Duration.ofMillis(50).toNanos();
+    assertEquals("done", callPolicy.execute("test", true, failingCall()));
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+  }
+
+  @Test
+  void unexpectedExceptionInProbeReleasesButDoesNotCloseBreaker() throws Exception {
+    CallPolicy callPolicy = newCallPolicy();
+    callPolicy.setMaxAttempts(1);
+    CircuitBreaker circuitBreaker = newCircuitBreaker();
+    callPolicy.setCircuitBreaker(circuitBreaker);
+    for (int i = 0; i < 2; i++) {
+      assertThrows(SQLTransientException.class, () -> callPolicy.execute("test", true, failingCall("57033")));
+    }
+    nanos = nanos + Duration.ofMillis(50).toNanos();
+
+    AuthCall<String> runtimeExceptionCall = (connection, queryTimeoutSeconds) -> {
+      throw new IllegalStateException("Injected failure");
+    };
+    assertThrows(IllegalStateException.class, () -> callPolicy.execute("test", true, runtimeExceptionCall));
+    assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+
+    AuthCall<String> errorCall = (connection, queryTimeoutSeconds) -> {
+      throw new AssertionError("Injected failure");
+    };
+    assertThrows(AssertionError.class, () -> callPolicy.execute("test", true, errorCall));
+    assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+
+    assertEquals("done", callPolicy.execute("test", true, failingCall()));
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+  }
+
+  @Test
+  void rejectsTimeoutsBelowOneSecond() {
+    CallPolicy callPolicy = newCallPolicy();
+    assertThrows(IllegalArgumentException.class, () -> callPolicy.setDeadline(Duration.ofMillis(500)));
+    assertThrows(IllegalArgumentException.class, () -> callPolicy.setAttemptTimeout(Duration.ofMillis(500)));
+    assertThrows(IllegalArgumentException.class, () -> callPolicy.setMaxAttempts(0));
+  }
+}
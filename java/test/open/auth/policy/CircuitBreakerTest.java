@@ -0,0 +1,149 @@
+package com.easydataservices.open.auth.policy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link CircuitBreaker}, with a fake clock.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+class CircuitBreakerTest {
+  private static final Duration OPEN_DURATION = Duration.ofMillis(50);
+  private long nanos;
+
+  private CircuitBreaker newBreaker() {
+    return new CircuitBreaker(4, 4, 0.5, OPEN_DURATION) {
+      @Override
+      long nanoTime() {
+        return nanos;
+      }
+    };
+  }
+
+  private CircuitBreaker newOpenBreaker() {
+    CircuitBreaker circuitBreaker = newBreaker();
+    for (int i = 0; i < 2; i++) {
+      circuitBreaker.recordSuccess(circuitBreaker.tryAcquire());
+      circuitBreaker.recordFailure(circuitBreaker.tryAcquire());
+    }
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    return circuitBreaker;
+  }
+
+  private void awaitOpenDuration() {
+    nanos = nanos + OPEN_DURATION.toNanos();
+  }
+
+  @Test
+  void staysClosedBelowMinimumCalls() {
+    CircuitBreaker circuitBreaker = newBreaker();
+    for (int i = 0; i < 3; i++) {
+      CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+      assertNotNull(permit);
+      assertFalse(permit.isProbe());
+      circuitBreaker.recordFailure(permit);
+    }
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+  }
+
+  @Test
+  void opensThenHalfOpensForSingleProbeThenCloses() {
+    CircuitBreaker circuitBreaker = newOpenBreaker();
+    assertNull(circuitBreaker.tryAcquire());
+
+    nanos = nanos + OPEN_DURATION.toNanos() - 1;
+    assertNull(circuitBreaker.tryAcquire());
+    nanos = nanos + 1;
+    CircuitBreaker.Permit probe = circuitBreaker.tryAcquire();
+    assertTrue(probe.isProbe());
+    assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+    assertNull(circuitBreaker.tryAcquire());
+
+    circuitBreaker.recordSuccess(probe);
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    assertNotNull(circuitBreaker.tryAcquire());
+  }
+
+  @Test
+  void failedProbeReopens() {
+    CircuitBreaker circuitBreaker = newOpenBreaker();
+    awaitOpenDuration();
+    CircuitBreaker.Permit probe = circuitBreaker.tryAcquire();
+
+    circuitBreaker.recordFailure(probe);
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    assertNull(circuitBreaker.tryAcquire());
+  }
+
+  @Test
+  void releasedProbeAllowsAnotherProbe() {
+    CircuitBreaker circuitBreaker = newOpenBreaker();
+    awaitOpenDuration();
+    CircuitBreaker.Permit probe = circuitBreaker.tryAcquire();
+
+    circuitBreaker.release(probe);
+    assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+    assertTrue(circuitBreaker.tryAcquire().isProbe());
+  }
+
+  @Test
+  void lateOutcomeOfCallAdmittedWhileClosedDoesNotChangeHalfOpenBreaker() {
+    CircuitBreaker circuitBreaker = newBreaker();
+    CircuitBreaker.Permit slowPermit = circuitBreaker.tryAcquire();
+    CircuitBreaker.Permit otherSlowPermit = circuitBreaker.tryAcquire();
+    for (int i = 0; i < 4; i++) {
+      circuitBreaker.recordFailure(circuitBreaker.tryAcquire());
+    }
+    awaitOpenDuration();
+    CircuitBreaker.Permit probe = circuitBreaker.tryAcquire();
+    assertTrue(probe.isProbe());
+
+    // The slow calls finish while the probe is in flight: neither closes, reopens nor frees the probe slot.
+    circuitBreaker.recordSuccess(slowPermit);
+    circuitBreaker.release(otherSlowPermit);
+    assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+    assertNull(circuitBreaker.tryAcquire());
+    circuitBreaker.recordFailure(otherSlowPermit);
+    assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+
+    circuitBreaker.recordSuccess(probe);
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+  }
+
+  @Test
+  void lateFailuresFromBeforeOpeningDoNotCountAfterClosing() {
+    CircuitBreaker circuitBreaker = newBreaker();
+    CircuitBreaker.Permit[] slowPermits = new CircuitBreaker.Permit[4];
+    for (int i = 0; i < slowPermits.length; i++) {
+      slowPermits[i] = circuitBreaker.tryAcquire();
+    }
+    for (int i = 0; i < 4; i++) {
+      circuitBreaker.recordFailure(circuitBreaker.tryAcquire());
+    }
+    awaitOpenDuration();
+    circuitBreaker.recordSuccess(circuitBreaker.tryAcquire());
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+
+    for (CircuitBreaker.Permit slowPermit : slowPermits) {
+      circuitBreaker.recordFailure(slowPermit);
+    }
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+  }
+
+  @Test
+  void rejectsInvalidConfiguration() {
+    assertThrows(IllegalArgumentException.class, () -> new CircuitBreaker(0, 1, 0.5, OPEN_DURATION));
+    assertThrows(IllegalArgumentException.class, () -> new CircuitBreaker(4, 0, 0.5, OPEN_DURATION));
+    assertThrows(IllegalArgumentException.class, () -> new CircuitBreaker(4, 4, 0, OPEN_DURATION));
+    assertThrows(IllegalArgumentException.class, () -> new CircuitBreaker(4, 4, 1.5, OPEN_DURATION));
+    assertThrows(IllegalArgumentException.class, () -> new CircuitBreaker(4, 4, 0.5, Duration.ofMillis(-1)));
+  }
+}
@@ -0,0 +1,263 @@
+package com.easydataservices.open.auth.shard;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import com.easydataservices.open.auth.AuthAttributesDao;
+import com.easydataservices.open.auth.AuthControlDao;
+import com.easydataservices.open.auth.AuthSessionDao;
+import com.easydataservices.open.auth.InMemoryAuthStore;
+import com.easydataservices.open.auth.SessionConfig;
+import com.easydataservices.open.auth.StoreAttribute;
+import com.easydataservices.open.auth.StoreSession;
+import com.easydataservices.open.auth.cache.OffHeapAttributeCache;
+
+/**
+ * Tests for {@link ShardedAuthStore}, with an {@link InMemoryAuthStore} standing in for each shard repository.
+ *
+ * @author jeremy.rickard@easydataservices.com
+ */
+class ShardedAuthStoreTest {
+  private final InMemoryAuthStore storeA = new InMemoryAuthStore();
+  private final InMemoryAuthStore storeB = new InMemoryAuthStore();
+  private final Shard shardA = new Shard("A", storeA.getDataSource(), "A");
+  private final Shard shardB = new Shard("B", storeB.getDataSource(), "B");
+  private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+  @AfterEach
+  void shutdown() {
+    executor.shutdownNow();
+  }
+
+  private ShardedAuthStore newShardedStore(Shard... shards) {
+    return new ShardedAuthStore(new ShardRing(List.of(shards), 64)) {
+      @Override
+      AuthSessionDao newSessionDao(Connection connection, String schemaName) {
+        return getStore(schemaName).newSessionDao();
+      }
+
+      @Override
+      AuthControlDao newControlDao(Connection connection, String schemaName) {
+        return getStore(schemaName).newControlDao();
+      }
+
+      @Override
+      AuthAttributesDao newAttributesDao(Connection connection, String schemaName) {
+        return getStore(schemaName).newAttributesDao();
+      }
+    };
+  }
+
+  private InMemoryAuthStore getStore(String schemaName) {
+    return "A".equals(schemaName) ? storeA : storeB;
+  }
+
+  private void advance(Duration duration) {
+    storeA.advance(duration);
+    storeB.advance(duration);
+  }
+
+  /**
+   * Return a session identifier owned by the specified shard on a ring.
+   */
+  private static String findSessionId(ShardedAuthStore shardedStore, Shard shard, String prefix) {
+    for (int i = 0; ; i++) {
+      String sessionId = prefix + i;
+      if (shardedStore.getShard(sessionId) == shard) {
+        return sessionId;
+      }
+    }
+  }
+
+  private static List<StoreAttribute> newAttributes(String... attributeNames) {
+    List<StoreAttribute> attributes = new ArrayList<StoreAttribute>();
+    for (String attributeName : attributeNames) {
+      StoreAttribute attribute = new StoreAttribute(attributeName);
+      attribute.setObject(attributeName + "-1");
+      attributes.add(attribute);
+    }
+    return attributes;
+  }
+
+  private static List<StoreAttribute> newAttribute(String attributeName, Object object) {
+    StoreAttribute attribute = new StoreAttribute(attributeName);
+    attribute.setObject(object);
+    return List.of(attribute);
+  }
+
+  private static Set<String> getAttributeNames(List<StoreAttribute> attributes) {
+    Set<String> attributeNames = new LinkedHashSet<String>();
+    for (StoreAttribute attribute : attributes) {
+      attributeNames.add(attribute.getAttributeName());
+    }
+    return attributeNames;
+  }
+
+  /**
+   * Add a session on shard A that moves to shard B once B is added.
+   */
+  private String addMigratingSession(ShardedAuthStore shardedStore, SessionConfig sessionConfig) throws SQLException {
+    ShardedAuthStore ringAB = newShardedStore(shardA, shardB);
+    for (int i = 0; ; i++) {
+      String sessionId = "migrating-" + i;
+      if (ringAB.getShard(sessionId) == shardB) {
+        shardedStore.addSession(sessionId, sessionConfig);
+        shardedStore.saveAttributes(sessionId, newAttributes("a", "b"));
+        return sessionId;
+      }
+    }
+  }
+
+  @Test
+  void migratedSessionKeepsAccessAndAuthenticationTimes() throws SQLException {
+    ShardedAuthStore shardedStore = newShardedStore(shardA);
+    SessionConfig sessionConfig = new SessionConfig();
+    sessionConfig.setAuthName("user");
+    String sessionId = addMigratingSession(shardedStore, sessionConfig);
+    Instant authenticatedTime = storeA.now();
+
+    advance(Duration.ofMinutes(8));
+    assertNotNull(shardedStore.getSession(sessionId));
+    shardedStore.addShard(shardB);
+    advance(Duration.ofMinutes(5));
+
+    // Idle for 5 of the 10 minutes allowed: the session must not arrive expired, nor be re-authenticated.
+    StoreSession session = shardedStore.getSession(sessionId);
+    assertNotNull(session);
+    assertFalse(session.isExpired());
+    assertEquals(authenticatedTime, session.getLastAuthenticatedTime());
+    assertEquals(Set.of(sessionId), storeB.getStoredSessionIds());
+    assertEquals(Set.of(), storeA.getStoredSessionIds());
+    assertEquals(Set.of("a", "b"), getAttributeNames(shardedStore.getAttributes(sessionId, 0)));
+  }
+
+  @Test
+  void cachedNodeSeesMigratedAttributes() throws Exception {
+    ShardedAuthStore shardedStore = newShardedStore(shardA);
+    String sessionId = addMigratingSession(shardedStore, new SessionConfig());
+    shardedStore.saveAttributes(sessionId, newAttribute("a", "a-2"));
+    OffHeapAttributeCache cache = new OffHeapAttributeCache(4 * 4096, 4, 4096, 64);
+    assertTrue(cache.refresh(sessionId, 2, storeA.newAttributesDao()));
+
+    // The copy gets a generation past the source's, so a node caching the source generation does not treat a later change
+    // on the copy as one it already holds.
+    shardedStore.addShard(shardB);
+    int migratedGenerationId = shardedStore.getSession(sessionId).getAttributeGenerationId();
+    assertTrue(migratedGenerationId > 2, "Generation " + migratedGenerationId);
+    assertEquals(Set.of(sessionId), storeB.getStoredSessionIds());
+    shardedStore.saveAttributes(sessionId, newAttribute("a", "a-3"));
+
+    int generationId = shardedStore.getSession(sessionId).getAttributeGenerationId();
+    assertTrue(cache.refresh(sessionId, generationId, storeB.newAttributesDao()));
+    assertEquals("a-3", cache.getObject(sessionId, "a", generationId));
+    assertEquals("b-1", cache.getObject(sessionId, "b", generationId));
+    assertEquals(Set.of("a", "b"), cache.getAttributeNames(sessionId, generationId));
+  }
+
+  @Test
+  void migratedSessionWithoutAttributesKeepsGenerationAhead() throws SQLException {
+    ShardedAuthStore shardedStore = newShardedStore(shardA);
+    String sessionId = addMigratingSession(shardedStore, new SessionConfig());
+    List<StoreAttribute> deletedAttributes = new ArrayList<StoreAttribute>();
+    deletedAttributes.addAll(newAttribute("a", null));
+    deletedAttributes.addAll(newAttribute("b", null));
+    shardedStore.saveAttributes(sessionId, deletedAttributes);
+    assertEquals(2, storeA.getGenerationId(sessionId));
+
+    shardedStore.addShard(shardB);
+    assertNotNull(shardedStore.getSession(sessionId));
+    assertEquals(Set.of(sessionId), storeB.getStoredSessionIds());
+    assertEquals(3, storeB.getGenerationId(sessionId));
+    assertEquals(Set.of(), storeB.getStoredAttributeNames(sessionId));
+  }
+
+  @Test
+  void concurrentMigrationsNeverExposePartialCopy() throws Exception {
+    ShardedAuthStore shardedStore = newShardedStore(shardA);
+    String sessionId = addMigratingSession(shardedStore, new SessionConfig());
+    shardedStore.addShard(shardB);
+
+    CountDownLatch startLatch = new CountDownLatch(1);
+    List<Future<Set<String>>> futures = new ArrayList<Future<Set<String>>>();
+    for (int i = 0; i < 8; i++) {
+      Callable<Set<String>> task = () -> {
+        startLatch.await();
+        return getAttributeNames(shardedStore.getAttributes(sessionId, 0));
+      };
+      futures.add(executor.submit(task));
+    }
+    startLatch.countDown();
+    for (Future<Set<String>> future : futures) {
+      assertEquals(Set.of("a", "b"), future.get());
+    }
+    assertEquals(Set.of(sessionId), storeB.getStoredSessionIds());
+    assertEquals(Set.of(), storeA.getStoredSessionIds());
+  }
+
+  @Test
+  void failedMigrationLeavesNoCopy() throws SQLException {
+    ShardedAuthStore shardedStore = newShardedStore(shardA);
+    String sessionId = addMigratingSession(shardedStore, new SessionConfig());
+    shardedStore.addShard(shardB);
+
+    storeB.setFailure("saveAttributes", "57033");
+    SQLException exception = assertThrows(SQLException.class, () -> shardedStore.getSession(sessionId));
+    assertEquals("57033", exception.getSQLState());
+    assertEquals(Set.of(), storeB.getStoredSessionIds());
+    assertEquals(Set.of(sessionId), storeA.getStoredSessionIds());
+
+    storeB.setFailure("saveAttributes", null);
+    assertNotNull(shardedStore.getSession(sessionId));
+    assertEquals(Set.of(sessionId), storeB.getStoredSessionIds());
+  }
+
+  @Test
+  void changeSessionIdAcrossShardsRemovesOldIdentifier() throws SQLException {
+    ShardedAuthStore shardedStore = newShardedStore(shardA, shardB);
+    String sessionId = findSessionId(shardedStore, shardA, "old-");
+    String newSessionId = findSessionId(shardedStore, shardB, "new-");
+    shardedStore.addSession(sessionId, new SessionConfig());
+    shardedStore.saveAttributes(sessionId, newAttributes("a"));
+
+    shardedStore.changeSessionId(sessionId, newSessionId);
+    assertNull(shardedStore.getSession(sessionId));
+    assertEquals(Set.of("a"), getAttributeNames(shardedStore.getAttributes(newSessionId, 0)));
+    assertEquals(Set.of(newSessionId), storeB.getStoredSessionIds());
+  }
+
+  @Test
+  void changeSessionIdAcrossShardsFailsCleanlyIfOldIdentifierCannotBeRemoved() throws SQLException {
+    ShardedAuthStore shardedStore = newShardedStore(shardA, shardB);
+    String sessionId = findSessionId(shardedStore, shardA, "old-");
+    String newSessionId = findSessionId(shardedStore, shardB, "new-");
+    shardedStore.addSession(sessionId, new SessionConfig());
+
+    storeA.setFailure("removeSession", "57033");
+    assertThrows(SQLException.class, () -> shardedStore.changeSessionId(sessionId, newSessionId));
+    assertTrue(storeA.getCalls().stream().filter("removeSession"::equals).count() > 1, storeA.getCalls().toString());
+
+    // The old identifier remains the only valid one.
+    assertNull(shardedStore.getSession(newSessionId));
+    assertEquals(Set.of(sessionId), storeA.getStoredSessionIds());
+    assertEquals(Set.of(), storeB.getStoredSessionIds());
+  }
+}